@@ -0,0 +1,147 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * Finds the next delimiter (e.g. tab, newline, quote or backslash) in a char or byte buffer
+ * 
+ * The text parsers spend most of their time looking for delimiters, so there are three 
+ * implementations: VectorDelimiterScanner, using the JDK Vector API (jdk.incubator.vector),
+ * SwarDelimiterScanner, which tests a long (8 bytes or 4 chars) at a time, and a plain 
+ * scalar loop. create() picks the Vector API one when the module is present at runtime 
+ * (--add-modules jdk.incubator.vector), and the SWAR one otherwise.
+ * 
+ * Delimiters must be ASCII, and there can be at most MAX_DELIMITERS of them.
+ * See DelimiterScannerBenchmark for how the implementations compare.
+ */
+abstract class DelimiterScanner {
+
+    static final int MAX_DELIMITERS = 4;
+
+    private final char[] delimiters;
+
+    DelimiterScanner(char[] delimiters) {
+        if (delimiters.length == 0 || delimiters.length > MAX_DELIMITERS) {
+            throw new IllegalArgumentException("A DelimiterScanner needs 1 to " + MAX_DELIMITERS + " delimiters");
+        }
+        for (char c : delimiters) {
+            if (c >= 0x80) {
+                throw new IllegalArgumentException("Delimiters must be ASCII");
+            }
+        }
+        this.delimiters = delimiters.clone();
+    }
+
+    /**
+     * @return the index of the first delimiter in buf from 'from' (inclusive) to 'to' (exclusive), or 'to' if there is none
+     */
+    abstract int indexOf(char[] buf, int from, int to);
+
+    /**
+     * @return the index of the first delimiter in buf from 'from' (inclusive) to 'to' (exclusive), or 'to' if there is none
+     */
+    abstract int indexOf(byte[] buf, int from, int to);
+
+    /**
+     * @return the i'th delimiter, padded to MAX_DELIMITERS by repeating the first one
+     */
+    final char delimiter(int i) {
+        return (i < delimiters.length) ? delimiters[i] : delimiters[0];
+    }
+
+    final boolean isDelimiter(int c) {
+        for (int i = 0; i < delimiters.length; i++) {
+            if (c == delimiters[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The scalar loop, used to finish off the tail of a buffer by the other implementations
+     */
+    final int scalarIndexOf(char[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (isDelimiter(buf[i])) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    final int scalarIndexOf(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (isDelimiter(buf[i] & 0xFF)) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return the fastest scanner available in this JVM
+     */
+    static DelimiterScanner create(char... delimiters) {
+        final DelimiterScanner vector = vector(delimiters);
+        if (vector != null) {
+            return vector;
+        }
+        return swar(delimiters);
+    }
+
+    /**
+     * @return a scanner using the Vector API, or 'null' if jdk.incubator.vector is not available
+     */
+    static DelimiterScanner vector(char... delimiters) {
+        try {
+            final Class<?> vectorClass = Class.forName("uk.me.mmt.sprotocol.VectorDelimiterScanner");
+            return (DelimiterScanner) vectorClass.getDeclaredConstructor(char[].class).newInstance((Object) delimiters);
+        } catch (final ReflectiveOperationException e) {
+            // not compiled in, or failed to initialise
+            return null;
+        } catch (final LinkageError e) {
+            // jdk.incubator.vector is not in the module graph
+            return null;
+        }
+    }
+
+    static DelimiterScanner swar(char... delimiters) {
+        return new SwarDelimiterScanner(delimiters);
+    }
+
+    static DelimiterScanner scalar(char... delimiters) {
+        return new DelimiterScanner(delimiters) {
+            @Override
+            int indexOf(char[] buf, int from, int to) {
+                return scalarIndexOf(buf, from, to);
+            }
+
+            @Override
+            int indexOf(byte[] buf, int from, int to) {
+                return scalarIndexOf(buf, from, to);
+            }
+        };
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
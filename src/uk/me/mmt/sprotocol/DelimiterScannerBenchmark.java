@@ -0,0 +1,139 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.Random;
+
+/**
+ * 
+ * Benchmark of the DelimiterScanner implementations (scalar, SWAR and Vector API)
+ * on char and byte buffers, for narrow rows of short terms and for wide rows of long literals
+ * 
+ * ant benchmark, or:
+ * java --add-modules jdk.incubator.vector -cp sprotocol-XXX.jar uk.me.mmt.sprotocol.DelimiterScannerBenchmark [MB]
+ *
+ */
+public class DelimiterScannerBenchmark {
+
+    private static final char[] TSV_DELIMITERS = { '\t', '\n', '\\' };
+    private static final int ROUNDS = 5;
+    private static final int WARMUP_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        final int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+
+        final DelimiterScanner vector = DelimiterScanner.vector(TSV_DELIMITERS);
+        if (vector == null) {
+            System.out.println("jdk.incubator.vector is not available, run with --add-modules jdk.incubator.vector to benchmark it");
+        }
+
+        final DelimiterScanner[] scanners = { DelimiterScanner.scalar(TSV_DELIMITERS), DelimiterScanner.swar(TSV_DELIMITERS), vector };
+        final String[] names = { "scalar", "swar", "vector" };
+
+        final int[] termLengths = { 16, 512 };
+        for (int termLength : termLengths) {
+            final char[] chars = tsvLike(megabytes << 20, termLength);
+            final byte[] bytes = new byte[chars.length];
+            for (int i = 0; i < chars.length; i++) {
+                bytes[i] = (byte) chars[i];
+            }
+
+            System.out.println(String.format("%d MB, terms of about %d chars", megabytes, termLength));
+            long expected = -1;
+            for (int s = 0; s < scanners.length; s++) {
+                if (scanners[s] == null) {
+                    continue;
+                }
+                final long[] charResult = run(scanners[s], chars, null);
+                final long[] byteResult = run(scanners[s], null, bytes);
+                if (expected == -1) {
+                    expected = charResult[0];
+                }
+                if (charResult[0] != expected || byteResult[0] != expected) {
+                    throw new IllegalStateException(names[s] + " found a different number of delimiters");
+                }
+                System.out.println(String.format("  %-8s char[] %8.0f MB/s   byte[] %8.0f MB/s",
+                        names[s], throughput(chars.length, charResult[1]), throughput(bytes.length, byteResult[1])));
+            }
+        }
+    }
+
+    /**
+     * @return the number of delimiters found, and the best time of the rounds in nanoseconds
+     */
+    private static long[] run(DelimiterScanner scanner, char[] chars, byte[] bytes) {
+        long found = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            final long start = System.nanoTime();
+            found = (chars != null) ? count(scanner, chars) : count(scanner, bytes);
+            final long time = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.min(best, time);
+            }
+        }
+        return new long[] { found, best };
+    }
+
+    private static long count(DelimiterScanner scanner, char[] buf) {
+        long found = 0;
+        int i = scanner.indexOf(buf, 0, buf.length);
+        while (i < buf.length) {
+            found++;
+            i = scanner.indexOf(buf, i + 1, buf.length);
+        }
+        return found;
+    }
+
+    private static long count(DelimiterScanner scanner, byte[] buf) {
+        long found = 0;
+        int i = scanner.indexOf(buf, 0, buf.length);
+        while (i < buf.length) {
+            found++;
+            i = scanner.indexOf(buf, i + 1, buf.length);
+        }
+        return found;
+    }
+
+    private static double throughput(int length, long nanos) {
+        return (length / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+
+    /**
+     * @return ASCII text with a tab or newline after terms of random length, averaging termLength
+     */
+    private static char[] tsvLike(int length, int termLength) {
+        final Random random = new Random(42);
+        final char[] buf = new char[length];
+        int next = random.nextInt(termLength * 2) + 1;
+        for (int i = 0; i < length; i++) {
+            if (i == next) {
+                buf[i] = (random.nextInt(4) == 0) ? '\n' : '\t';
+                next = i + random.nextInt(termLength * 2) + 1;
+            } else {
+                buf[i] = (char) ('a' + random.nextInt(26));
+            }
+        }
+        return buf;
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
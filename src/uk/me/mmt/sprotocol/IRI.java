@@ -22,11 +22,79 @@ package uk.me.mmt.sprotocol;
 
 /**
  * An immutable IRI class - disallows null values
+ * 
+ * An IRI is either stored whole, or, when created by a TermInterner, as a 
+ * namespace shared with other IRIs plus a local name, which are joined each time
+ * the whole value is asked for, and are hashed and compared without being joined
  */
 public final class IRI extends SparqlResource {
+
+    private final String namespace;
+    private final String localName;
+    private int hash;
     
     public IRI(String iri) {
         super(iri);
+        this.namespace = null;
+        this.localName = null;
+    }
+
+    /**
+     * An IRI split into a (shared) namespace and a local name, see TermInterner
+     */
+    IRI(String namespace, String localName) {
+        super();
+        if (null == namespace || null == localName) {
+            throw new IllegalArgumentException("The value can not be 'null'");
+        }
+        this.namespace = namespace;
+        this.localName = localName;
+    }
+
+    @Override
+    public String getValue() {
+        if (namespace == null) {
+            return super.getValue();
+        }
+        // not kept, so a split IRI stays smaller than a whole one
+        return namespace.concat(localName);
+    }
+
+    /**
+     * @return the IRI up to and including its last '#' or '/', or the whole IRI if it has neither
+     */
+    public String getNamespace() {
+        if (namespace != null) {
+            return namespace;
+        }
+        final String iri = super.getValue();
+        return iri.substring(0, splitPoint(iri));
+    }
+
+    /**
+     * @return the IRI after its last '#' or '/', may be empty
+     */
+    public String getLocalName() {
+        if (localName != null) {
+            return localName;
+        }
+        final String iri = super.getValue();
+        return iri.substring(splitPoint(iri));
+    }
+
+    /**
+     * @return the index at which an IRI splits into namespace and local name
+     */
+    static int splitPoint(String iri) {
+        final int hashPos = iri.lastIndexOf('#');
+        if (hashPos != -1) {
+            return hashPos + 1;
+        }
+        final int slashPos = iri.lastIndexOf('/');
+        if (slashPos != -1) {
+            return slashPos + 1;
+        }
+        return iri.length();
     }
     
     @Override
@@ -41,9 +109,13 @@ public final class IRI extends SparqlResource {
     
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + this.getValue().hashCode();
+        int result = hash;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + valueHashCode();
+            hash = result;
+        }
         return result;
     }
 
@@ -60,11 +132,50 @@ public final class IRI extends SparqlResource {
             return false;
         
         IRI other = (IRI) obj;
-        if (!this.getValue().equals(other.getValue()))
+        if (this.namespace == null && other.namespace == null) {
+            return super.getValue().equals(other.getValue());
+        }
+        // compare the parts, without joining the values of split IRIs
+        if (this.namespace != null && other.namespace != null && this.namespace.equals(other.namespace)) {
+            return this.localName.equals(other.localName);
+        }
+        final int length = valueLength();
+        if (length != other.valueLength()) {
             return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (valueCharAt(i) != other.valueCharAt(i)) {
+                return false;
+            }
+        }
         return true;
     }
 
+    /**
+     * @return the same as getValue().hashCode(), without joining a split IRI
+     */
+    private int valueHashCode() {
+        if (namespace == null) {
+            return super.getValue().hashCode();
+        }
+        int h = namespace.hashCode();
+        for (int i = 0; i < localName.length(); i++) {
+            h = 31 * h + localName.charAt(i);
+        }
+        return h;
+    }
+
+    private int valueLength() {
+        return (namespace == null) ? super.getValue().length() : namespace.length() + localName.length();
+    }
+
+    private char valueCharAt(int i) {
+        if (namespace == null) {
+            return super.getValue().charAt(i);
+        }
+        return (i < namespace.length()) ? namespace.charAt(i) : localName.charAt(i - namespace.length());
+    }
+
 
     @Override
     public String toString() {
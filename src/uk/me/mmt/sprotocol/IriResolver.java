@@ -0,0 +1,174 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * Resolution of relative IRI references against a base IRI, as RFC 3986 section 5.2 defines it
+ */
+final class IriResolver {
+
+    //To prevent accidental instances
+    private IriResolver() {
+
+    }
+
+    /**
+     * @param base the base IRI, may be 'null'
+     * @param ref an IRI reference
+     * @return ref resolved against base, or ref itself if it is absolute or there is no absolute base
+     */
+    static String resolve(String base, String ref) {
+        if (base == null || scheme(ref) != null) {
+            return ref;
+        }
+        final String baseScheme = scheme(base);
+        if (baseScheme == null) {
+            return ref;
+        }
+
+        // split the reference into path (with its authority), query and fragment
+        String path = ref;
+        String fragment = "";
+        final int hashPos = path.indexOf('#');
+        if (hashPos != -1) {
+            fragment = path.substring(hashPos);
+            path = path.substring(0, hashPos);
+        }
+        String query = null;
+        final int queryPos = path.indexOf('?');
+        if (queryPos != -1) {
+            query = path.substring(queryPos);
+            path = path.substring(0, queryPos);
+        }
+
+        // and the base into authority, path and query, its fragment is not used
+        String rest = base.substring(baseScheme.length() + 1);
+        final int baseHashPos = rest.indexOf('#');
+        if (baseHashPos != -1) {
+            rest = rest.substring(0, baseHashPos);
+        }
+        String baseQuery = null;
+        final int baseQueryPos = rest.indexOf('?');
+        if (baseQueryPos != -1) {
+            baseQuery = rest.substring(baseQueryPos);
+            rest = rest.substring(0, baseQueryPos);
+        }
+        String baseAuthority = "";
+        String basePath = rest;
+        if (rest.startsWith("//")) {
+            final int slashPos = rest.indexOf('/', 2);
+            baseAuthority = (slashPos == -1) ? rest : rest.substring(0, slashPos);
+            basePath = (slashPos == -1) ? "" : rest.substring(slashPos);
+        }
+
+        final String authority;
+        if (path.startsWith("//")) {
+            final int slashPos = path.indexOf('/', 2);
+            authority = (slashPos == -1) ? path : path.substring(0, slashPos);
+            path = removeDotSegments((slashPos == -1) ? "" : path.substring(slashPos));
+        } else {
+            authority = baseAuthority;
+            if (path.length() == 0) {
+                path = basePath;
+                if (query == null) {
+                    query = baseQuery;
+                }
+            } else if (path.startsWith("/")) {
+                path = removeDotSegments(path);
+            } else if (baseAuthority.length() > 0 && basePath.length() == 0) {
+                path = removeDotSegments("/" + path);
+            } else {
+                path = removeDotSegments(basePath.substring(0, basePath.lastIndexOf('/') + 1) + path);
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder(baseScheme.length() + authority.length() + path.length() + fragment.length() + 1);
+        sb.append(baseScheme).append(':').append(authority).append(path);
+        if (query != null) {
+            sb.append(query);
+        }
+        sb.append(fragment);
+        return sb.toString();
+    }
+
+    /**
+     * @return the scheme of an IRI, or 'null' for a relative reference
+     */
+    private static String scheme(String iri) {
+        for (int i = 0; i < iri.length(); i++) {
+            final char c = iri.charAt(i);
+            if (c == ':') {
+                return (i > 0) ? iri.substring(0, i) : null;
+            }
+            final boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            if (!letter && (i == 0 || !((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'))) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The remove_dot_segments algorithm of RFC 3986 section 5.2.4
+     */
+    private static String removeDotSegments(String path) {
+        if (path.indexOf('.') == -1) {
+            return path;
+        }
+
+        final StringBuilder out = new StringBuilder(path.length());
+        String in = path;
+        while (in.length() > 0) {
+            if (in.startsWith("../")) {
+                in = in.substring(3);
+            } else if (in.startsWith("./")) {
+                in = in.substring(2);
+            } else if (in.startsWith("/./")) {
+                in = in.substring(2);
+            } else if (in.equals("/.")) {
+                in = "/";
+            } else if (in.startsWith("/../")) {
+                in = in.substring(3);
+                removeLastSegment(out);
+            } else if (in.equals("/..")) {
+                in = "/";
+                removeLastSegment(out);
+            } else if (in.equals(".") || in.equals("..")) {
+                in = "";
+            } else {
+                int next = in.indexOf('/', 1);
+                if (next == -1) {
+                    next = in.length();
+                }
+                out.append(in, 0, next);
+                in = in.substring(next);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void removeLastSegment(StringBuilder out) {
+        final int slashPos = out.lastIndexOf("/");
+        out.setLength((slashPos == -1) ? 0 : slashPos);
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
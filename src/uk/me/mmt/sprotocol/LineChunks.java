@@ -0,0 +1,70 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a buffer of line based results (TSV, N-Triples) into chunks which each 
+ * hold whole lines, so the chunks can be parsed independently of each other
+ */
+final class LineChunks {
+
+    //To prevent accidental instances
+    private LineChunks() {
+
+    }
+
+    /**
+     * @param buf the chars of the lines
+     * @param position a position after the start of the buffer
+     * @param length the number of chars in the buffer
+     * @return the start of the first line at or after position, or length if there is none
+     */
+    static int lineStart(char[] buf, int position, int length) {
+        int start = Math.min(position, length);
+        while (start < length && buf[start - 1] != '\n') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Split the lines between start and length into chunks of at least chunkSize chars,
+     * each extended to the end of its last line
+     *
+     * @param chunkSize the size of the chunks before they are extended, at least 1
+     * @return the start and end of each chunk, in order, with no gaps between them
+     */
+    static List<int[]> split(char[] buf, int start, int length, int chunkSize) {
+        final List<int[]> chunks = new ArrayList<int[]>();
+        while (start < length) {
+            final int end = lineStart(buf, (int) Math.min((long) start + chunkSize, length), length);
+            chunks.add(new int[] { start, end });
+            start = end;
+        }
+        return chunks;
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
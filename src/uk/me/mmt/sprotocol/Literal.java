@@ -20,18 +20,159 @@
  */
 package uk.me.mmt.sprotocol;
 
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Literal class, immutable with option datatype and language
+ * 
+ * The typed accessors (asLong, asDouble...) decode the value according to the XSD
+ * datatype of the literal, the decoded value is then kept, so it is only parsed once.
+ * 
+ * Very large values (see SparqlQueryProtocolClient.setLargeLiteralThreshold) are kept
+ * as chars rather than as a String, read them with getValueAsCharSequence or getValueAsReader,
+ * getValue() then creates a new String each time it is called.
  */
 public final class Literal extends SparqlResource {
+
+    private static final Set<String> XSD_INTEGER_TYPES = xsdTypes("integer", "long", "int", "short", "byte",
+            "nonNegativeInteger", "positiveInteger", "nonPositiveInteger", "negativeInteger",
+            "unsignedLong", "unsignedInt", "unsignedShort", "unsignedByte");
+    private static final Set<String> XSD_FLOATING_TYPES = xsdTypes("double", "float");
+    private static final Set<String> XSD_DATE_TIME_TYPES = xsdTypes("dateTime", "dateTimeStamp");
+    private static final String XSD_DATE = SprotocolConstants.XSD_NS + "date";
+
     private final String datatype;
     private final String language;
     private volatile String forToString;
+    private volatile Object parsedValue;
+
+    // the chars of a value decoded on the first getValue(), released once decoded
+    private volatile char[] source;
+    private final int sourceStart;
+    private final int sourceEnd;
+    private final boolean sourceEscaped;
+    // false for large values, which are decoded each time rather than kept as a String as well
+    private final boolean keepDecoded;
+    private volatile String decodedValue;
 
     public Literal(String literal, String dt, String lang) {
+        this(literal, dt, lang, null);
+    }
+
+    /**
+     * @param parsed the decoded value, as returned by parseValue, if a parser already has it
+     */
+    Literal(String literal, String dt, String lang, Object parsed) {
         super(literal);
         datatype = dt;
         language = lang;
+        parsedValue = parsed;
+        sourceStart = 0;
+        sourceEnd = 0;
+        sourceEscaped = false;
+        keepDecoded = true;
+    }
+
+    /**
+     * A literal whose value is only decoded when it is first asked for,
+     * the buffer is kept until then, so must not be modified
+     * 
+     * @param buf Buffer holding the value
+     * @param start Index of the value in the buffer
+     * @param end Index after the end of the value
+     * @param escaped Whether the value has backslash escapes, which must be valid, see StringEscapes
+     */
+    Literal(char[] buf, int start, int end, boolean escaped, String dt, String lang) {
+        this(buf, start, end, escaped, dt, lang, true);
+    }
+
+    /**
+     * @param keepDecoded false for a large value, to keep it as chars, getValue() then decodes it each time
+     */
+    Literal(char[] buf, int start, int end, boolean escaped, String dt, String lang, boolean keepDecoded) {
+        super();
+        datatype = dt;
+        language = lang;
+        source = buf;
+        sourceStart = start;
+        sourceEnd = end;
+        sourceEscaped = escaped;
+        this.keepDecoded = keepDecoded;
+    }
+
+    @Override
+    public String getValue() {
+        final String decoded = decodedValue;
+        if (decoded != null) {
+            return decoded;
+        }
+
+        final char[] buf = source;
+        if (buf == null) {
+            // either not lazy, or decoded by another thread since decodedValue was read
+            final String other = decodedValue;
+            return (other != null) ? other : super.getValue();
+        }
+
+        final String value = sourceEscaped ? StringEscapes.unescape(buf, sourceStart, sourceEnd, new StringBuilder(sourceEnd - sourceStart))
+                : new String(buf, sourceStart, sourceEnd - sourceStart);
+        if (keepDecoded) {
+            decodedValue = value;
+            source = null;
+        }
+        return value;
+    }
+
+    /**
+     * @return the number of chars of the value, without decoding a large value
+     */
+    public int getValueLength() {
+        final char[] buf = source;
+        if (buf != null && !sourceEscaped) {
+            return sourceEnd - sourceStart;
+        }
+        return getValue().length();
+    }
+
+    /**
+     * A view of the value, for large values it shares their chars instead of copying them into a String
+     * 
+     * @return the value, as a read only CharSequence
+     */
+    public CharSequence getValueAsCharSequence() {
+        final char[] buf = source;
+        if (buf != null && !sourceEscaped) {
+            return CharBuffer.wrap(buf, sourceStart, sourceEnd - sourceStart).asReadOnlyBuffer();
+        }
+        return getValue();
+    }
+
+    /**
+     * @return a Reader over the value, for large values it reads their chars instead of copying them into a String
+     */
+    public Reader getValueAsReader() {
+        final char[] buf = source;
+        if (buf != null && !sourceEscaped) {
+            return new CharArrayReader(buf, sourceStart, sourceEnd - sourceStart);
+        }
+        return new StringReader(getValue());
     }
 
     public String getDatatype() {
@@ -42,6 +183,185 @@ public final class Literal extends SparqlResource {
         return language;
     }
     
+    /**
+     * @return the value of an integer literal (xsd:integer, xsd:int, xsd:long...)
+     * @throws IllegalStateException if the literal is not an integer
+     * @throws ArithmeticException if the value does not fit in a long
+     * @throws SprotocolException if the value is not a valid integer
+     */
+    public long asLong() {
+        final Object value = getParsedValue();
+        if (value instanceof Long) {
+            return ((Long) value).longValue();
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).longValueExact();
+        }
+        throw new IllegalStateException(this + " is not integer");
+    }
+
+    /**
+     * @return the value of a numeric literal (xsd:double, xsd:float, xsd:decimal or an integer)
+     * @throws IllegalStateException if the literal is not numeric
+     * @throws SprotocolException if the value is not a valid number
+     */
+    public double asDouble() {
+        final Object value = getParsedValue();
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        throw new IllegalStateException(this + " is not numeric");
+    }
+
+    /**
+     * @return the value of a numeric literal (xsd:decimal, an integer, xsd:double or xsd:float)
+     * @throws IllegalStateException if the literal is not numeric
+     * @throws ArithmeticException for the infinite and NaN values of xsd:double and xsd:float
+     * @throws SprotocolException if the value is not a valid number
+     */
+    public BigDecimal asBigDecimal() {
+        final Object value = getParsedValue();
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof Long) {
+            return BigDecimal.valueOf(((Long) value).longValue());
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Double) {
+            final double d = ((Double) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new ArithmeticException(this + " has no decimal value");
+            }
+            return BigDecimal.valueOf(d);
+        }
+        throw new IllegalStateException(this + " is not numeric");
+    }
+
+    /**
+     * @return the value of an xsd:boolean literal
+     * @throws IllegalStateException if the literal is not boolean
+     * @throws SprotocolException if the value is not a valid boolean
+     */
+    public boolean asBoolean() {
+        final Object value = getParsedValue();
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        }
+        throw new IllegalStateException(this + " is not boolean");
+    }
+
+    /**
+     * @return the value of an xsd:dateTime, xsd:dateTimeStamp or xsd:date literal,
+     * values without a timezone are taken to be in UTC, a date is the start of its day
+     * @throws IllegalStateException if the literal is not a date
+     * @throws SprotocolException if the value is not a valid date
+     */
+    public Instant asInstant() {
+        final Object value = getParsedValue();
+        if (value instanceof Instant) {
+            return (Instant) value;
+        }
+        throw new IllegalStateException(this + " is not dateTime");
+    }
+
+    private Object getParsedValue() {
+        Object value = parsedValue;
+        if (value == null) {
+            try {
+                value = parseValue(getValue(), datatype);
+            } catch (final IllegalArgumentException e) {
+                throw new SprotocolException("Unable to parse the value of " + this, e);
+            }
+            if (value == null) {
+                throw new IllegalStateException(this + " does not have a supported XSD datatype");
+            }
+            parsedValue = value;
+        }
+        return value;
+    }
+
+    /**
+     * Decode the lexical form of a literal according to its XSD datatype
+     * 
+     * @return a Long or BigInteger for the integer types, a BigDecimal for xsd:decimal, a Double 
+     * for xsd:double and xsd:float, a Boolean for xsd:boolean, an Instant for the date types 
+     * and 'null' for any other datatype
+     * @throws IllegalArgumentException if the lexical form is not valid for the datatype
+     */
+    static Object parseValue(String lexical, String datatype) {
+        if (null == datatype) {
+            return null;
+        }
+
+        final String value = lexical.trim();
+        if (XSD_INTEGER_TYPES.contains(datatype)) {
+            try {
+                return Long.valueOf(value);
+            } catch (final NumberFormatException e) {
+                // too big for a long, or not a number at all
+                return new BigInteger(value);
+            }
+        }
+
+        if (SprotocolConstants.XSD_DECIMAL.equals(datatype)) {
+            return new BigDecimal(value);
+        }
+
+        if (XSD_FLOATING_TYPES.contains(datatype)) {
+            if ("INF".equals(value) || "+INF".equals(value)) {
+                return Double.valueOf(Double.POSITIVE_INFINITY);
+            }
+            if ("-INF".equals(value)) {
+                return Double.valueOf(Double.NEGATIVE_INFINITY);
+            }
+            if ("NaN".equals(value)) {
+                return Double.valueOf(Double.NaN);
+            }
+            return Double.valueOf(value);
+        }
+
+        if (SprotocolConstants.XSD_BOOLEAN.equals(datatype)) {
+            if ("true".equals(value) || "1".equals(value)) {
+                return Boolean.TRUE;
+            }
+            if ("false".equals(value) || "0".equals(value)) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException("Invalid xsd:boolean: " + value);
+        }
+
+        try {
+            if (XSD_DATE_TIME_TYPES.contains(datatype)) {
+                final TemporalAccessor dateTime = DateTimeFormatter.ISO_DATE_TIME.parse(value);
+                if (dateTime.isSupported(ChronoField.OFFSET_SECONDS)) {
+                    return Instant.from(dateTime);
+                }
+                return LocalDateTime.from(dateTime).toInstant(ZoneOffset.UTC);
+            }
+
+            if (XSD_DATE.equals(datatype)) {
+                final TemporalAccessor date = DateTimeFormatter.ISO_DATE.parse(value);
+                final ZoneOffset offset = date.isSupported(ChronoField.OFFSET_SECONDS) ? ZoneOffset.from(date) : ZoneOffset.UTC;
+                return LocalDate.from(date).atStartOfDay(offset).toInstant();
+            }
+        } catch (final DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value, e);
+        }
+
+        return null;
+    }
+
+    private static Set<String> xsdTypes(String... localNames) {
+        final Set<String> types = new HashSet<String>();
+        for (String localName : Arrays.asList(localNames)) {
+            types.add(SprotocolConstants.XSD_NS + localName);
+        }
+        return Collections.unmodifiableSet(types);
+    }
+    
     @Override
     public Literal asLiteral() {
         return this;
@@ -95,7 +415,9 @@ public final class Literal extends SparqlResource {
         }
         
         final String result = prepareToString();
-        forToString = result;
+        if (keepDecoded) {
+            forToString = result;
+        }
         return result;
     }
 
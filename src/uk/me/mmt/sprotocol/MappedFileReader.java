@@ -0,0 +1,205 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Reader of a UTF-8 file, decoding straight from its memory mapped buffers into 
+ * the chars asked for, so the bytes of the file are never copied onto the heap.
+ * 
+ * The file is mapped once by map(), and any number of readers can then be created
+ * over the buffers, each reading the file from its start.
+ */
+final class MappedFileReader extends Reader {
+
+    // the most bytes mapped by one buffer, buffers end between characters
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final ByteBuffer[] segments;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private int segment = -1;
+    // the buffer being decoded, 'null' at the end of the file
+    private ByteBuffer current;
+    // the low surrogate of a pair when only one char could be read, or 0
+    private char pendingLow;
+
+    /**
+     * @param segments the buffers returned by map(), which are not modified
+     */
+    MappedFileReader(MappedByteBuffer[] segments) {
+        this.segments = segments;
+        nextSegment();
+        // skip a byte order mark
+        if (current != null && current.remaining() >= 3 && (current.get(0) & 0xff) == 0xef 
+                && (current.get(1) & 0xff) == 0xbb && (current.get(2) & 0xff) == 0xbf) {
+            current.position(3);
+        }
+    }
+
+    /**
+     * Map the whole of a file, read only, in buffers which each end between two UTF-8 
+     * characters, so each one can be decoded on its own
+     * 
+     * @throws IOException if the file can not be opened or mapped
+     */
+    static MappedByteBuffer[] map(Path file) throws IOException {
+        final List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>();
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long length = channel.size();
+            long start = 0;
+            while (start < length) {
+                long end = Math.min(start + SEGMENT_SIZE, length);
+                if (end < length) {
+                    // move back to the first byte of the character across the boundary
+                    final ByteBuffer b = ByteBuffer.allocate(1);
+                    for (int i = 0; i < 3; i++) {
+                        b.clear();
+                        channel.read(b, end);
+                        if ((b.get(0) & 0xc0) != 0x80) {
+                            break;
+                        }
+                        end--;
+                    }
+                }
+                buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                start = end;
+            }
+        } finally {
+            // the buffers stay valid once the channel is closed
+            channel.close();
+        }
+        return buffers.toArray(new MappedByteBuffer[buffers.size()]);
+    }
+
+    /**
+     * Map a file of lines, read only, in buffers of about chunkSize bytes which each end
+     * at the end of a line, so each one can be parsed on its own
+     * 
+     * @param chunkSize the size of the buffers before they are extended to the end of their last line
+     * @throws IOException if the file can not be opened or mapped, or has a line too long to be mapped
+     */
+    static MappedByteBuffer[] mapLines(Path file, long chunkSize) throws IOException {
+        final List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>();
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long length = channel.size();
+            final ByteBuffer scan = ByteBuffer.allocate(8192);
+            long start = 0;
+            while (start < length) {
+                long end = Math.min(start + Math.min(chunkSize, SEGMENT_SIZE), length);
+                // extend the chunk to just after the next newline
+                boolean found = (end == length);
+                while (!found) {
+                    scan.clear();
+                    final int read = channel.read(scan, end);
+                    if (read == -1) {
+                        break;
+                    }
+                    for (int i = 0; i < read && !found; i++) {
+                        end++;
+                        found = (scan.get(i) == '\n');
+                    }
+                }
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("A line of " + file + " is too long to be mapped");
+                }
+                buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                start = end;
+            }
+        } finally {
+            // the buffers stay valid once the channel is closed
+            channel.close();
+        }
+        return buffers.toArray(new MappedByteBuffer[buffers.size()]);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pendingLow != 0) {
+            cbuf[off] = pendingLow;
+            pendingLow = 0;
+            return 1;
+        }
+        final CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off) {
+            if (current == null) {
+                return -1;
+            }
+            final boolean last = (segment == segments.length - 1);
+            final CoderResult result = decoder.decode(current, out, last);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow() && out.position() == off) {
+                // a surrogate pair, with room for one char
+                final CharBuffer pair = CharBuffer.allocate(2);
+                decoder.decode(current, pair, last);
+                cbuf[off] = pair.get(0);
+                pendingLow = pair.get(1);
+                return 1;
+            }
+            if (result.isUnderflow()) {
+                if (last) {
+                    decoder.flush(out);
+                } else if (current.hasRemaining()) {
+                    throw new IOException("Incomplete UTF-8 character at the end of a mapped buffer");
+                }
+                nextSegment();
+            }
+        }
+        return out.position() - off;
+    }
+
+    private void nextSegment() {
+        segment++;
+        // each reader has its own position in the shared buffers
+        current = (segment < segments.length) ? segments[segment].duplicate() : null;
+    }
+
+    @Override
+    public void close() {
+        current = null;
+        segment = segments.length;
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
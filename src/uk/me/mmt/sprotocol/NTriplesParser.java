@@ -0,0 +1,389 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A streaming parser of N-Triples (http://www.w3.org/TR/n-triples/), one line at a time.
+ *
+ * Lines are found in a char buffer refilled from the Reader, and parsed in place,
+ * with DelimiterScanners jumping to the end of lines, IRIs and strings. Strings are
+ * only created for the final values of the terms, and the subject and predicate of
+ * the previous triple are reused while they repeat, as they do in sorted graphs.
+ */
+final class NTriplesParser extends RdfParser {
+    private static final int BUFFER_SIZE = 16384;
+    private static final DelimiterScanner LINE_END = DelimiterScanner.create('\n');
+    private static final DelimiterScanner IRI_END = DelimiterScanner.create('>', '\\');
+    private static final DelimiterScanner STRING_END = DelimiterScanner.create('"', '\\');
+
+    private final Reader in;
+    // start of the chunk parsed, when parsing a buffer without a Reader
+    private final int chunkStart;
+
+    private char[] buf;
+    // start of the next line
+    private int pos;
+    // end of the chars available in buf
+    private int limit;
+
+    // the line being parsed, and the position in it
+    private long lineNumber;
+    private int lineStart;
+    private int lineEnd;
+    private int cursor;
+
+    // the IRI or string last scanned
+    private int termStart;
+    private int termEnd;
+    private boolean termEscaped;
+
+    private SparqlResource lastSubject;
+    private String lastSubjectValue;
+    private IRI lastPredicate;
+    private String lastPredicateValue;
+    private String lastDatatype;
+    private String lastLanguage;
+
+    /**
+     * @param in Reader over the N-Triples
+     */
+    NTriplesParser(Reader in) {
+        this.in = in;
+        this.chunkStart = 0;
+        this.buf = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Create a parser over lines of N-Triples held in memory
+     *
+     * @param buf Buffer holding the lines
+     * @param start Index of the start of the first line
+     * @param end Index after the end of the last line
+     */
+    NTriplesParser(char[] buf, int start, int end) {
+        this.in = null;
+        this.chunkStart = start;
+        this.buf = buf;
+        this.pos = start;
+        this.limit = end;
+    }
+
+    @Override
+    boolean readNext(TripleHandler handler) throws SprotocolException, IOException {
+        while (nextLine()) {
+            skipSpace();
+            if (this.cursor == this.lineEnd || this.buf[this.cursor] == '#') {
+                // blank line or comment
+                continue;
+            }
+
+            final SparqlResource subject = parseSubject();
+            skipSpace();
+            final IRI predicate = parsePredicate();
+            skipSpace();
+            final SparqlResource object = parseObject();
+            skipSpace();
+            if (this.cursor == this.lineEnd || this.buf[this.cursor] != '.') {
+                throw error("expected '.'");
+            }
+            this.cursor++;
+            skipSpace();
+            if (this.cursor != this.lineEnd && this.buf[this.cursor] != '#') {
+                throw error("unexpected text after '.'");
+            }
+
+            handler.handleTriple(subject, predicate, object);
+            return true;
+        }
+        return false;
+    }
+
+    private SparqlResource parseSubject() throws SprotocolException {
+        if (this.cursor == this.lineEnd) {
+            throw error("expected a subject");
+        }
+
+        final boolean bnode = this.buf[this.cursor] == '_';
+        if (bnode) {
+            scanBNode();
+        } else if (this.buf[this.cursor] == '<') {
+            scanIRI();
+        } else {
+            throw error("expected an IRI or a blank node as subject");
+        }
+
+        if (!this.termEscaped && this.lastSubjectValue != null && this.lastSubject.isBnode() == bnode
+                && sliceEquals(this.lastSubjectValue, this.buf, this.termStart, this.termEnd)) {
+            return this.lastSubject;
+        }
+        final String value = unescape(this.buf, this.termStart, this.termEnd, this.termEscaped);
+        this.lastSubject = bnode ? new BNode(value) : createIRI(value);
+        this.lastSubjectValue = value;
+        return this.lastSubject;
+    }
+
+    private IRI parsePredicate() throws SprotocolException {
+        if (this.cursor == this.lineEnd || this.buf[this.cursor] != '<') {
+            throw error("expected an IRI as predicate");
+        }
+        scanIRI();
+
+        if (!this.termEscaped && this.lastPredicateValue != null
+                && sliceEquals(this.lastPredicateValue, this.buf, this.termStart, this.termEnd)) {
+            return this.lastPredicate;
+        }
+        final String value = unescape(this.buf, this.termStart, this.termEnd, this.termEscaped);
+        this.lastPredicate = createIRI(value);
+        this.lastPredicateValue = value;
+        return this.lastPredicate;
+    }
+
+    private SparqlResource parseObject() throws SprotocolException {
+        if (this.cursor == this.lineEnd) {
+            throw error("expected an object");
+        }
+
+        final char first = this.buf[this.cursor];
+        if (first == '<') {
+            scanIRI();
+            return createIRI(unescape(this.buf, this.termStart, this.termEnd, this.termEscaped));
+        }
+        if (first == '_') {
+            scanBNode();
+            return new BNode(new String(this.buf, this.termStart, this.termEnd - this.termStart));
+        }
+        if (first != '"') {
+            throw error("expected an IRI, a blank node or a literal as object");
+        }
+
+        scanString();
+        final int valueStart = this.termStart;
+        final int valueEnd = this.termEnd;
+        final boolean valueEscaped = this.termEscaped;
+
+        // datatype, e.g. "1"^^<http://www.w3.org/2001/XMLSchema#integer>
+        if (this.cursor + 2 < this.lineEnd && this.buf[this.cursor] == '^' && this.buf[this.cursor + 1] == '^') {
+            this.cursor += 2;
+            if (this.buf[this.cursor] != '<') {
+                throw error("expected a datatype IRI");
+            }
+            scanIRI();
+            if (this.termEscaped) {
+                this.lastDatatype = unescape(this.buf, this.termStart, this.termEnd, true);
+            } else {
+                this.lastDatatype = sliceAsString(this.lastDatatype, this.buf, this.termStart, this.termEnd);
+            }
+            return sliceLiteral(this.buf, valueStart, valueEnd, valueEscaped, this.lastDatatype, null);
+        }
+
+        // language, e.g. "chat"@fr
+        if (this.cursor < this.lineEnd && this.buf[this.cursor] == '@') {
+            final int langStart = ++this.cursor;
+            while (this.cursor < this.lineEnd && isLanguageChar(this.buf[this.cursor])) {
+                this.cursor++;
+            }
+            if (this.cursor == langStart) {
+                throw error("expected a language tag");
+            }
+            this.lastLanguage = sliceAsString(this.lastLanguage, this.buf, langStart, this.cursor);
+            return sliceLiteral(this.buf, valueStart, valueEnd, valueEscaped, null, this.lastLanguage);
+        }
+
+        return sliceLiteral(this.buf, valueStart, valueEnd, valueEscaped, null, null);
+    }
+
+    /**
+     * Scan an IRI, from its '<' to after its '>', setting termStart and termEnd around its value
+     */
+    private void scanIRI() throws SprotocolException {
+        this.termStart = this.cursor + 1;
+        this.termEscaped = false;
+        int i = this.termStart;
+        while (true) {
+            i = IRI_END.indexOf(this.buf, i, this.lineEnd);
+            if (i == this.lineEnd) {
+                throw error("unterminated IRI");
+            }
+            if (this.buf[i] == '>') {
+                break;
+            }
+            // only the u and U escapes are valid in IRIs, they are checked when unescaped
+            this.termEscaped = true;
+            i = Math.min(i + 2, this.lineEnd);
+        }
+        this.termEnd = i;
+        this.cursor = i + 1;
+    }
+
+    /**
+     * Scan a string, from its '"' to after its closing '"', setting termStart and termEnd around its value
+     */
+    private void scanString() throws SprotocolException {
+        this.termStart = this.cursor + 1;
+        this.termEscaped = false;
+        int i = this.termStart;
+        while (true) {
+            i = STRING_END.indexOf(this.buf, i, this.lineEnd);
+            if (i == this.lineEnd) {
+                throw error("unterminated string");
+            }
+            if (this.buf[i] == '"') {
+                break;
+            }
+            this.termEscaped = true;
+            i = Math.min(i + 2, this.lineEnd);
+        }
+        this.termEnd = i;
+        this.cursor = i + 1;
+    }
+
+    /**
+     * Scan a blank node, e.g. _:b1, setting termStart and termEnd around its label
+     */
+    private void scanBNode() throws SprotocolException {
+        if (this.cursor + 2 >= this.lineEnd || this.buf[this.cursor + 1] != ':') {
+            throw error("invalid blank node");
+        }
+        this.termStart = this.cursor + 2;
+        this.termEscaped = false;
+        int i = this.termStart;
+        while (i < this.lineEnd && !isSpace(this.buf[i]) && this.buf[i] != '<' && this.buf[i] != '"') {
+            i++;
+        }
+        // a label can not end with a '.', it is the end of the triple
+        while (i > this.termStart && this.buf[i - 1] == '.') {
+            i--;
+        }
+        if (i == this.termStart) {
+            throw error("invalid blank node");
+        }
+        this.termEnd = i;
+        this.cursor = i;
+    }
+
+    private void skipSpace() {
+        while (this.cursor < this.lineEnd && isSpace(this.buf[this.cursor])) {
+            this.cursor++;
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean isLanguageChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-';
+    }
+
+    private SprotocolException error(String message) {
+        long line = this.lineNumber;
+        // a chunk of a buffer counts its lines from its own start
+        for (int i = 0; i < this.chunkStart; i++) {
+            if (this.buf[i] == '\n') {
+                line++;
+            }
+        }
+        return new SprotocolException(String.format("Invalid N-Triples at line %d, %s: %s", line, message,
+                new String(this.buf, this.lineStart, this.lineEnd - this.lineStart)), null);
+    }
+
+    /**
+     * Find the next line, reading more input if needed, the cursor is set to its start
+     *
+     * @return false at the end of the input
+     * @throws IOException if the reader fails
+     */
+    private boolean nextLine() throws IOException {
+        int from = this.pos;
+        while (true) {
+            final int eol = LINE_END.indexOf(this.buf, from, this.limit);
+            if (eol < this.limit) {
+                setLine(eol);
+                this.pos = eol + 1;
+                return true;
+            }
+
+            final int scanned = this.limit - this.pos;
+            if (!fill()) {
+                if (this.pos == this.limit) {
+                    return false;
+                }
+                // last line, without a newline
+                setLine(this.limit);
+                this.pos = this.limit;
+                return true;
+            }
+            from = this.pos + scanned;
+        }
+    }
+
+    private void setLine(int eol) {
+        this.lineNumber++;
+        this.lineStart = this.pos;
+        this.lineEnd = (eol > this.pos && this.buf[eol - 1] == '\r') ? eol - 1 : eol;
+        this.cursor = this.pos;
+    }
+
+    /**
+     * Read more chars, first moving the unparsed ones to the start of the buffer
+     * (or growing it if it is full of them), into a new buffer if literals refer to this one.
+     *
+     * @return false at the end of the input
+     * @throws IOException if the reader fails
+     */
+    private boolean fill() throws IOException {
+        if (null == this.in) {
+            return false;
+        }
+
+        if (this.pos > 0) {
+            // literals may still refer to the chars before pos
+            final char[] target = compactTarget(this.buf, this.limit - this.pos, BUFFER_SIZE);
+            System.arraycopy(this.buf, this.pos, target, 0, this.limit - this.pos);
+            this.buf = target;
+            this.limit -= this.pos;
+            this.pos = 0;
+        } else if (this.limit == this.buf.length) {
+            this.buf = Arrays.copyOf(this.buf, this.buf.length * 2);
+            this.bufferShared = false;
+        }
+
+        final int read = this.in.read(this.buf, this.limit, this.buf.length - this.limit);
+        if (read == -1) {
+            return false;
+        }
+        this.limit += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.in != null) {
+            this.in.close();
+        }
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
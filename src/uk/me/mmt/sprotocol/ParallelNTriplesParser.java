@@ -0,0 +1,224 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses N-Triples held in memory, or in a file, on a ForkJoinPool
+ * 
+ * The lines are split into chunks at line boundaries and each chunk is parsed by its own
+ * NTriplesParser. Unordered, the threads parsing the chunks pass their triples to the
+ * handler as they go, so it must be thread-safe. Ordered, each chunk keeps its triples
+ * until the chunks before it have been passed on, and the handler is called by one
+ * thread at a time, in the order of the document.
+ */
+final class ParallelNTriplesParser {
+
+    // chunks smaller than this are not worth a task of their own
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    // chunks per thread, so that threads finishing early can steal more work
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    //To prevent accidental instances
+    private ParallelNTriplesParser() {
+
+    }
+
+    /**
+     * @param buf Buffer holding the N-Triples
+     * @param length the number of chars of N-Triples in the buffer
+     * @param interner used to create the terms of the graph, may be 'null'
+     * @param lazyLiterals whether literals are decoded when first asked for, they then keep the chars of the whole buffer
+     * @param largeLiteralThreshold the length above which literal values are kept as chars rather than Strings
+     * @param limiter counts the triples of all the chunks against the limits of the request, may be 'null'
+     * @param handler called for each triple, concurrently unless ordered
+     * @param ordered whether the triples are passed on in the order of the document
+     * @param pool the pool to parse on
+     * @throws SprotocolException if any line can not be parsed, or if thrown by the handler
+     */
+    static void parse(char[] buf, int length, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold, ResultLimiter limiter, TripleHandler handler, boolean ordered, ForkJoinPool pool) throws SprotocolException {
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+
+        final List<int[]> chunks = LineChunks.split(buf, 0, length, chunkSize);
+
+        final List<ChunkSource> sources = new ArrayList<ChunkSource>(chunks.size());
+        for (final int[] chunk : chunks) {
+            sources.add(new ChunkSource() {
+                @Override
+                public NTriplesParser open() {
+                    return new NTriplesParser(buf, chunk[0], chunk[1]);
+                }
+            });
+        }
+        parse(sources, interner, lazyLiterals, largeLiteralThreshold, limiter, handler, ordered, pool);
+    }
+
+    /**
+     * Parse a file of N-Triples, which is memory mapped in chunks of lines rather than read onto the heap
+     *
+     * @param file the N-Triples, in UTF-8
+     * @throws SprotocolException if any line can not be parsed, or if thrown by the handler
+     * @throws IOException if the file can not be mapped
+     * @see #parse(char[], int, TermInterner, boolean, int, ResultLimiter, TripleHandler, boolean, ForkJoinPool)
+     */
+    static void parse(Path file, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold, ResultLimiter limiter, TripleHandler handler, boolean ordered, ForkJoinPool pool) throws SprotocolException, IOException {
+        final long chunkSize = Math.max(MIN_CHUNK_SIZE, Files.size(file) / (pool.getParallelism() * CHUNKS_PER_THREAD));
+
+        final List<ChunkSource> sources = new ArrayList<ChunkSource>();
+        for (final MappedByteBuffer chunk : MappedFileReader.mapLines(file, chunkSize)) {
+            sources.add(new ChunkSource() {
+                @Override
+                public NTriplesParser open() {
+                    return new NTriplesParser(new MappedFileReader(new MappedByteBuffer[] { chunk }));
+                }
+            });
+        }
+        parse(sources, interner, lazyLiterals, largeLiteralThreshold, limiter, handler, ordered, pool);
+    }
+
+    private static void parse(List<ChunkSource> sources, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold, ResultLimiter limiter, TripleHandler handler, boolean ordered, ForkJoinPool pool) throws SprotocolException {
+        final OrderedDelivery delivery = ordered ? new OrderedDelivery(handler, sources.size()) : null;
+        final List<ChunkTask> tasks = new ArrayList<ChunkTask>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            tasks.add(new ChunkTask(i, interner, lazyLiterals, largeLiteralThreshold, limiter, sources.get(i), handler, delivery));
+        }
+
+        if (tasks.size() < 2) {
+            for (ChunkTask task : tasks) {
+                task.compute();
+            }
+            return;
+        }
+
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Opens a parser over the lines of one chunk
+     */
+    private interface ChunkSource {
+        NTriplesParser open();
+    }
+
+    /**
+     * Parses the lines of one chunk
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final TermInterner interner;
+        private final boolean lazyLiterals;
+        private final int largeLiteralThreshold;
+        private final ResultLimiter limiter;
+        private final ChunkSource source;
+        private final TripleHandler handler;
+        private final OrderedDelivery delivery;
+
+        ChunkTask(int index, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold, ResultLimiter limiter, ChunkSource source,
+                TripleHandler handler, OrderedDelivery delivery) {
+            this.index = index;
+            this.interner = interner;
+            this.lazyLiterals = lazyLiterals;
+            this.largeLiteralThreshold = largeLiteralThreshold;
+            this.limiter = limiter;
+            this.source = source;
+            this.handler = handler;
+            this.delivery = delivery;
+        }
+
+        @Override
+        protected void compute() {
+            final NTriplesParser parser = source.open();
+            parser.setTermInterner(interner);
+            parser.setLazyLiterals(lazyLiterals);
+            parser.setLargeLiteralThreshold(largeLiteralThreshold);
+            parser.setLimiter(limiter);
+
+            try {
+                if (delivery == null) {
+                    parser.parse(handler);
+                    return;
+                }
+
+                final List<Triple> triples = new ArrayList<Triple>();
+                parser.parse(new TripleHandler() {
+                    @Override
+                    public void handleTriple(SparqlResource subject, IRI predicate, SparqlResource object) {
+                        triples.add(new Triple(subject, predicate, object));
+                    }
+                });
+                delivery.complete(index, triples);
+            } catch (final IOException e) {
+                // only a mapped file can fail to be read, e.g. if it is truncated
+                throw new SprotocolException("IOException caught by sprotocol", e);
+            }
+        }
+    }
+
+    /**
+     * Passes on the triples of the chunks in order, as soon as all the chunks before them are done
+     */
+    private static final class OrderedDelivery {
+        private final TripleHandler handler;
+        // the triples of the chunks done but not yet passed on, by chunk
+        private final List<List<Triple>> chunks;
+        // the first chunk not yet passed on
+        private int next;
+
+        OrderedDelivery(TripleHandler handler, int chunkCount) {
+            this.handler = handler;
+            this.chunks = new ArrayList<List<Triple>>(Collections.<List<Triple>>nCopies(chunkCount, null));
+        }
+
+        synchronized void complete(int index, List<Triple> triples) {
+            chunks.set(index, triples);
+            while (next < chunks.size() && chunks.get(next) != null) {
+                for (Triple triple : chunks.get(next)) {
+                    handler.handleTriple(triple.getSubject(), triple.getPredicate(), triple.getObject());
+                }
+                // let the triples passed on be collected
+                chunks.set(next, Collections.<Triple>emptyList());
+                next++;
+            }
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,156 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses TSV results held in memory on a ForkJoinPool
+ * 
+ * The rows are split into chunks at line boundaries, each chunk is parsed by its own
+ * SparqlResultsTsvParser, and the rows of the chunks are then put back together in order.
+ */
+final class ParallelTsvParser {
+
+    // chunks smaller than this are not worth a task of their own
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    // chunks per thread, so that threads finishing early can steal more work
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    //To prevent accidental instances
+    private ParallelTsvParser() {
+
+    }
+
+    /**
+     * @param tsv TSV results, including the variables line
+     * @param interner used to create the terms of the results, may be 'null'
+     * @param lazyLiterals whether literals are decoded when first asked for, they then keep the chars of the whole TSV
+     * @param largeLiteralThreshold the length above which literal values are kept as chars rather than Strings
+     * @param limiter counts the rows of all the chunks against the limits of the request, may be 'null'
+     * @param pool the pool to parse on
+     * @return the results, in the order of the TSV
+     * @throws SprotocolException if any row can not be parsed
+     */
+    static SelectResultSet parse(String tsv, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold, ResultLimiter limiter, ForkJoinPool pool) throws SprotocolException, IOException {
+        final int headerEnd = tsv.indexOf('\n');
+        if (headerEnd == -1) {
+            // no rows to count
+            return new SelectResultSetTsv(tsv, interner, lazyLiterals, largeLiteralThreshold, null);
+        }
+
+        final SparqlResultsTsvParser headerParser = new SparqlResultsTsvParser(new StringReader(tsv.substring(0, headerEnd + 1)));
+        final SelectResultHead head = headerParser.getHead();
+        headerParser.close();
+
+        final char[] buf = tsv.toCharArray();
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, buf.length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+
+        final List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+        for (final int[] chunk : LineChunks.split(buf, headerEnd + 1, buf.length, chunkSize)) {
+            tasks.add(new ChunkTask(head, interner, lazyLiterals, largeLiteralThreshold, limiter, buf, chunk[0], chunk[1]));
+        }
+
+        final List<SelectResultRow> rows;
+        if (tasks.size() < 2) {
+            rows = tasks.isEmpty() ? new ArrayList<SelectResultRow>() : tasks.get(0).compute();
+        } else {
+            pool.invoke(new RecursiveTask<Void>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+
+            int size = 0;
+            for (ChunkTask task : tasks) {
+                size += task.getRawResult().size();
+            }
+            rows = new ArrayList<SelectResultRow>(size);
+            for (ChunkTask task : tasks) {
+                rows.addAll(task.getRawResult());
+            }
+        }
+
+        return new SelectResultSetSimple(head, rows);
+    }
+
+    /**
+     * Parses the rows of one chunk of the buffer
+     */
+    private static final class ChunkTask extends RecursiveTask<List<SelectResultRow>> {
+        private static final long serialVersionUID = 1L;
+
+        private final SelectResultHead head;
+        private final TermInterner interner;
+        private final boolean lazyLiterals;
+        private final int largeLiteralThreshold;
+        private final ResultLimiter limiter;
+        private final char[] buf;
+        private final int start;
+        private final int end;
+
+        ChunkTask(SelectResultHead head, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold, ResultLimiter limiter, char[] buf, int start, int end) {
+            this.head = head;
+            this.interner = interner;
+            this.lazyLiterals = lazyLiterals;
+            this.largeLiteralThreshold = largeLiteralThreshold;
+            this.limiter = limiter;
+            this.buf = buf;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<SelectResultRow> compute() {
+            final SparqlResultsTsvParser parser = new SparqlResultsTsvParser(head, buf, start, end);
+            parser.setTermInterner(interner);
+            parser.setLazyLiterals(lazyLiterals);
+            parser.setLargeLiteralThreshold(largeLiteralThreshold);
+            parser.setLimiter(limiter);
+
+            final List<SelectResultRow> rows = new ArrayList<SelectResultRow>();
+            try {
+                SparqlResource[] bindings = new SparqlResource[head.size()];
+                while (parser.nextRow(bindings)) {
+                    rows.add(new SelectResultRowSimple(head, bindings));
+                    bindings = new SparqlResource[head.size()];
+                }
+            } catch (final IOException e) {
+                // should be impossible for IOException to occur when reading from a buffer
+                throw new SprotocolException("IOException caught by sprotocol", e);
+            }
+            return rows;
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,42 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * An enumerated type of the forms of SPARQL queries, UNKNOWN for
+ * anything else, e.g. an update or text which is not SPARQL
+ */
+public enum QueryForm {
+    SELECT, CONSTRUCT, DESCRIBE, ASK, UNKNOWN;
+
+    /**
+     * Find the form of a query from its first keyword after the prologue,
+     * see QueryFormLexer
+     *
+     * @param query SPARQL query
+     * @return the form of the query, UNKNOWN if it is not one of the query forms
+     */
+    public static QueryForm of(CharSequence query) {
+        return QueryFormLexer.queryForm(query);
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
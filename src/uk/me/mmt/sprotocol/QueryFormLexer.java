@@ -0,0 +1,172 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * Finds the form of a SPARQL query, without parsing it
+ * 
+ * The lexer reads the query in place, skipping whitespace and comments and the
+ * prologue (BASE and PREFIX declarations, with their prefixed names, IRIs and, for
+ * robustness, strings), up to the first keyword, which is the query form. Nothing is
+ * allocated, so it is cheap to run on every query. Words in comments, strings or IRIs
+ * are never taken as the form, unlike with a regular expression over the whole query.
+ */
+final class QueryFormLexer {
+
+    //To prevent accidental instances
+    private QueryFormLexer() {
+
+    }
+
+    /**
+     * @param query SPARQL query
+     * @return the form of the query, UNKNOWN if its first keyword is not a query form
+     */
+    static QueryForm queryForm(CharSequence query) {
+        final int length = query.length();
+        int i = 0;
+        while (i < length) {
+            final char c = query.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\uFEFF') {
+                i++;
+            } else if (c == '#') {
+                i = skipComment(query, i);
+            } else if (c == '<') {
+                i = skipIRI(query, i);
+            } else if (c == '"' || c == '\'') {
+                i = skipString(query, i);
+            } else if (c == ':') {
+                // the empty prefix of a PREFIX declaration
+                i++;
+            } else if (isNameStart(c)) {
+                int end = i + 1;
+                while (end < length && isNameChar(query.charAt(end))) {
+                    end++;
+                }
+                if (end < length && query.charAt(end) == ':') {
+                    // the prefix of a PREFIX declaration
+                    i = end + 1;
+                } else if (isKeyword(query, i, end, "PREFIX") || isKeyword(query, i, end, "BASE")) {
+                    i = end;
+                } else {
+                    return keywordForm(query, i, end);
+                }
+            } else {
+                return QueryForm.UNKNOWN;
+            }
+        }
+        return QueryForm.UNKNOWN;
+    }
+
+    private static QueryForm keywordForm(CharSequence query, int start, int end) {
+        if (isKeyword(query, start, end, "SELECT")) {
+            return QueryForm.SELECT;
+        }
+        if (isKeyword(query, start, end, "CONSTRUCT")) {
+            return QueryForm.CONSTRUCT;
+        }
+        if (isKeyword(query, start, end, "DESCRIBE")) {
+            return QueryForm.DESCRIBE;
+        }
+        if (isKeyword(query, start, end, "ASK")) {
+            return QueryForm.ASK;
+        }
+        return QueryForm.UNKNOWN;
+    }
+
+    /**
+     * @param keyword in upper case
+     * @return true if the chars between start and end are the keyword, in any case
+     */
+    private static boolean isKeyword(CharSequence query, int start, int end, String keyword) {
+        if (end - start != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            final char c = query.charAt(start + i);
+            // ASCII upper case, keywords only have letters
+            if ((c >= 'a' && c <= 'z' ? (char) (c - 32) : c) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameStart(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_' || c > 0x7F;
+    }
+
+    private static boolean isNameChar(char c) {
+        return isNameStart(c) || (c >= '0' && c <= '9') || c == '-' || c == '.';
+    }
+
+    /**
+     * @return the index after the end of the line of the comment
+     */
+    private static int skipComment(CharSequence query, int i) {
+        final int length = query.length();
+        while (i < length && query.charAt(i) != '\n' && query.charAt(i) != '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after the closing '>'
+     */
+    private static int skipIRI(CharSequence query, int i) {
+        final int length = query.length();
+        i++;
+        while (i < length && query.charAt(i) != '>') {
+            i++;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Skip a string, with either quote, short or long (tripled quotes), and backslash escapes
+     *
+     * @return the index after the closing quotes
+     */
+    private static int skipString(CharSequence query, int i) {
+        final int length = query.length();
+        final char quote = query.charAt(i);
+        final boolean isLong = i + 2 < length && query.charAt(i + 1) == quote && query.charAt(i + 2) == quote;
+        i += isLong ? 3 : 1;
+        while (i < length) {
+            final char c = query.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c != quote) {
+                i++;
+            } else if (!isLong) {
+                return i + 1;
+            } else if (i + 2 < length && query.charAt(i + 1) == quote && query.charAt(i + 2) == quote) {
+                return i + 3;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,141 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A pull parser of RDF graphs, one statement at a time
+ */
+abstract class RdfParser extends TermParser {
+    private static final String GENID = "genid";
+
+    private long generatedBNodes;
+
+    // the handler last given to parseNext, and the one counting its triples against the limits
+    private TripleHandler countedHandler;
+    private TripleHandler countingHandler;
+
+    /**
+     * Parse the next statement, passing its triples to the handler
+     * 
+     * @return false if there are no more statements
+     * @throws SprotocolException on a parse error, or if thrown by the handler
+     * @throws IOException if the underlying reader fails
+     */
+    boolean parseNext(TripleHandler handler) throws SprotocolException, IOException {
+        if (null == limiter) {
+            return readNext(handler);
+        }
+        if (handler != this.countedHandler) {
+            this.countedHandler = handler;
+            this.countingHandler = new CountingTripleHandler(limiter, handler);
+        }
+        return readNext(this.countingHandler);
+    }
+
+    /**
+     * Parse the next statement, see parseNext, which also counts its triples against the limits
+     */
+    abstract boolean readNext(TripleHandler handler) throws SprotocolException, IOException;
+
+    /**
+     * A new blank node, for the ones without a label in the document,
+     * labelled "genid" followed by a number
+     */
+    BNode generateBNode() {
+        return new BNode(GENID + (++this.generatedBNodes));
+    }
+
+    /**
+     * A blank node with a label of the document, labels which start with "genid"
+     * are prefixed with it once more, so that they can not clash with generated ones
+     */
+    BNode labelledBNode(String label) {
+        return new BNode(label.startsWith(GENID) ? GENID + label : label);
+    }
+
+    /**
+     * Drive a TripleHandler with the whole graph, then close this parser
+     * 
+     * @throws SprotocolException on a parse error, or if thrown by the handler
+     * @throws IOException if the underlying reader fails
+     */
+    void parse(TripleHandler handler) throws SprotocolException, IOException {
+        try {
+            while (parseNext(handler)) {
+                // the handler gets the triples
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Create a parser for the given RDF mime-type
+     * 
+     * @param interner used to create the terms of the graph, may be 'null'
+     * @param lazyLiterals whether the values of literals are decoded when first asked for
+     * @param largeLiteralThreshold the length above which the values of literals are kept as chars
+     * @throws SprotocolException if there is no parser for the mime-type
+     * @throws IOException
+     */
+    static RdfParser create(String contentType, Reader in, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold) throws SprotocolException, IOException {
+        final RdfParser parser;
+        if (SprotocolConstants.RDF_NTRIPLES_MIME.equals(contentType) || SprotocolConstants.RDF_NT_MIME.equals(contentType)) {
+            parser = new NTriplesParser(in);
+        } else if (SprotocolConstants.RDF_TTL_MIME.equals(contentType)) {
+            parser = new TurtleParser(in);
+        } else if (SprotocolConstants.RDF_XML_MIME.equals(contentType)) {
+            parser = new RdfXmlParser(in);
+        } else {
+            in.close();
+            throw new SprotocolException("No RDF parser defined for " + contentType, null);
+        }
+        parser.setTermInterner(interner);
+        parser.setLazyLiterals(lazyLiterals);
+        parser.setLargeLiteralThreshold(largeLiteralThreshold);
+        return parser;
+    }
+
+    /**
+     * Counts the triples passed on to a handler
+     */
+    private static final class CountingTripleHandler implements TripleHandler {
+        private final ResultLimiter limiter;
+        private final TripleHandler handler;
+
+        CountingTripleHandler(ResultLimiter limiter, TripleHandler handler) {
+            this.limiter = limiter;
+            this.handler = handler;
+        }
+
+        @Override
+        public void handleTriple(SparqlResource subject, IRI predicate, SparqlResource object) throws SprotocolException {
+            this.limiter.countRow();
+            this.handler.handleTriple(subject, predicate, object);
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
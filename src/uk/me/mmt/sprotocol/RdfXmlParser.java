@@ -0,0 +1,581 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A streaming (StAX) parser of RDF/XML (http://www.w3.org/TR/rdf-syntax-grammar/),
+ * one node element of the rdf:RDF element at a time.
+ *
+ * Unlike a DOM parse only the node element being parsed is ever held by the parser,
+ * the triples of its properties are passed on as soon as they are read. Nested node
+ * elements are parsed recursively, so the stack follows the depth of the XML, not
+ * its length. A document whose root is a single node element, without rdf:RDF,
+ * is read as one statement.
+ *
+ * rdf:parseType="Literal" content is written out as it was read, with the namespaces
+ * declared on its elements, it is not canonicalised. Blank nodes are labelled as
+ * RdfParser.generateBNode does.
+ */
+final class RdfXmlParser extends RdfParser {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    private static final String RDF_NS = SprotocolConstants.RDF_NS;
+    private static final String RDF_XML_LITERAL = RDF_NS + "XMLLiteral";
+    private static final int TEXT_SIZE = 256;
+    // IRIs of element names kept, before the cache is cleared
+    private static final int MAX_ELEMENT_IRIS = 4096;
+
+    private final Reader in;
+    private final XMLStreamReader xml;
+    private boolean started;
+    private boolean finished;
+    // xml:base and xml:lang of the rdf:RDF element
+    private String documentBase;
+    private String documentLanguage;
+    // the text of the literal being read
+    private char[] text = new char[TEXT_SIZE];
+    // IRIs of the element names seen, by namespace then local name
+    private final Map<String, Map<String, IRI>> elementIris = new HashMap<String, Map<String, IRI>>();
+    private int elementIriCount;
+
+    private TripleHandler handler;
+    private IRI rdfType;
+    private IRI rdfFirst;
+    private IRI rdfRest;
+    private IRI rdfNil;
+
+    /**
+     * @param in Reader over the RDF/XML
+     * @throws SprotocolException if the XML reader can not be created
+     */
+    RdfXmlParser(Reader in) throws SprotocolException {
+        this.in = in;
+        try {
+            this.xml = XML_INPUT_FACTORY.createXMLStreamReader(in);
+        } catch (final XMLStreamException e) {
+            throw new SprotocolException("Error parsing RDF/XML returned via SPARQL Endpoint", e);
+        }
+    }
+
+    @Override
+    boolean readNext(TripleHandler handler) throws SprotocolException, IOException {
+        if (finished) {
+            return false;
+        }
+        this.handler = handler;
+
+        try {
+            if (!started) {
+                started = true;
+                this.rdfType = createIRI(RDF_NS + "type");
+                this.rdfFirst = createIRI(RDF_NS + "first");
+                this.rdfRest = createIRI(RDF_NS + "rest");
+                this.rdfNil = createIRI(RDF_NS + "nil");
+
+                if (!nextStartElement()) {
+                    finished = true;
+                    return false;
+                }
+                if (!isRdf("RDF")) {
+                    parseNodeElement(null, null);
+                    finished = true;
+                    return true;
+                }
+                documentBase = base(null);
+                documentLanguage = language(null);
+            }
+
+            while (xml.hasNext()) {
+                final int event = xml.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    parseNodeElement(documentBase, documentLanguage);
+                    return true;
+                }
+                if (event == XMLStreamReader.END_ELEMENT) {
+                    // the end of rdf:RDF
+                    break;
+                }
+                checkNoText(event);
+            }
+        } catch (final XMLStreamException e) {
+            throw new SprotocolException("Error parsing RDF/XML returned via SPARQL Endpoint", e);
+        }
+
+        finished = true;
+        return false;
+    }
+
+    /**
+     * Move to the root element
+     * 
+     * @return false if there is none
+     */
+    private boolean nextStartElement() throws XMLStreamException {
+        while (xml.hasNext()) {
+            if (xml.next() == XMLStreamReader.START_ELEMENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a node element and its property elements, the reader is left on its end element
+     * 
+     * @return the subject of the node element
+     */
+    private SparqlResource parseNodeElement(String base, String lang) throws XMLStreamException {
+        base = base(base);
+        lang = language(lang);
+
+        final String about = rdfAttribute("about");
+        final String id = rdfAttribute("ID");
+        final String nodeId = rdfAttribute("nodeID");
+        final SparqlResource subject;
+        if (about != null) {
+            subject = createIRI(IriResolver.resolve(base, about));
+        } else if (id != null) {
+            subject = createIRI(IriResolver.resolve(base, "#" + id));
+        } else if (nodeId != null) {
+            subject = labelledBNode(nodeId);
+        } else {
+            subject = generateBNode();
+        }
+
+        if (!isRdf("Description")) {
+            handler.handleTriple(subject, rdfType, elementIri());
+        }
+        parsePropertyAttributes(subject, base, lang);
+
+        int li = 0;
+        while (true) {
+            final int event = xml.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                li = parsePropertyElement(subject, base, lang, li);
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                return subject;
+            } else {
+                checkNoText(event);
+            }
+        }
+    }
+
+    /**
+     * Parse a property element of the subject, the reader is left on its end element
+     * 
+     * @param li the number of rdf:li elements of the subject so far
+     * @return the number of rdf:li elements of the subject, including this one
+     */
+    private int parsePropertyElement(SparqlResource subject, String base, String lang, int li) throws XMLStreamException {
+        base = base(base);
+        lang = language(lang);
+
+        final IRI predicate;
+        if (isRdf("li")) {
+            li++;
+            predicate = createIRI(RDF_NS + "_" + li);
+        } else {
+            predicate = elementIri();
+        }
+
+        final String id = rdfAttribute("ID");
+        final String resource = rdfAttribute("resource");
+        final String nodeId = rdfAttribute("nodeID");
+        final String parseType = rdfAttribute("parseType");
+        final String datatype = rdfAttribute("datatype");
+
+        final SparqlResource object;
+        if ("Resource".equals(parseType)) {
+            final BNode node = generateBNode();
+            emit(subject, predicate, node, id, base);
+            int nodeLi = 0;
+            while (true) {
+                final int event = xml.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    nodeLi = parsePropertyElement(node, base, lang, nodeLi);
+                } else if (event == XMLStreamReader.END_ELEMENT) {
+                    return li;
+                } else {
+                    checkNoText(event);
+                }
+            }
+        } else if ("Collection".equals(parseType)) {
+            object = parseCollection(base, lang);
+        } else if (parseType != null) {
+            // "Literal", and any other parseType, which the syntax reads as "Literal"
+            object = createLiteral(readXmlLiteral(), RDF_XML_LITERAL, null);
+        } else if (resource != null || nodeId != null || hasPropertyAttributes()) {
+            // an empty property element, whose object may have property attributes of its own
+            if (resource != null) {
+                object = createIRI(IriResolver.resolve(base, resource));
+            } else if (nodeId != null) {
+                object = labelledBNode(nodeId);
+            } else {
+                object = generateBNode();
+            }
+            parsePropertyAttributes(object, base, lang);
+            while (xml.next() != XMLStreamReader.END_ELEMENT) {
+                checkNoElement();
+            }
+        } else {
+            object = readPropertyContent(base, lang, datatype == null ? null : IriResolver.resolve(base, datatype));
+        }
+
+        emit(subject, predicate, object, id, base);
+        return li;
+    }
+
+    /**
+     * Read the content of a property element, either a literal or a single node element,
+     * the reader is left on the end element of the property
+     */
+    private SparqlResource readPropertyContent(String base, String lang, String datatype) throws XMLStreamException {
+        // the text is not kept in a field, nested node elements read their literals into it too
+        int length = 0;
+        SparqlResource node = null;
+        while (true) {
+            final int event = xml.next();
+            if (event == XMLStreamReader.END_ELEMENT) {
+                break;
+            }
+            if (event == XMLStreamReader.START_ELEMENT) {
+                if (node != null || !isWhitespace(text, length)) {
+                    throw error("a property element with a node element and text or another node element");
+                }
+                node = parseNodeElement(base, lang);
+            } else if (node != null) {
+                checkNoText(event);
+            } else if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA || event == XMLStreamReader.SPACE) {
+                final int textLength = xml.getTextLength();
+                ensureText(length + textLength);
+                System.arraycopy(xml.getTextCharacters(), xml.getTextStart(), text, length, textLength);
+                length += textLength;
+            } else if (event == XMLStreamReader.ENTITY_REFERENCE) {
+                final String entity = xml.getText();
+                ensureText(length + entity.length());
+                entity.getChars(0, entity.length(), text, length);
+                length += entity.length();
+            }
+        }
+
+        if (node != null) {
+            return node;
+        }
+        // xml:lang does not apply to typed literals
+        final String language = datatype == null ? lang : null;
+        if (isLargeLiteral(length)) {
+            final char[] value = Arrays.copyOf(text, length);
+            // do not keep a buffer as large as the literal around
+            text = new char[TEXT_SIZE];
+            return createLargeLiteral(value, 0, length, datatype, language);
+        }
+        return createLiteral(new String(text, 0, length), datatype, language);
+    }
+
+    /**
+     * Parse the node elements of a rdf:parseType="Collection" property element into
+     * an RDF list, the reader is left on the end element of the property
+     * 
+     * @return the head of the list
+     */
+    private SparqlResource parseCollection(String base, String lang) throws XMLStreamException {
+        SparqlResource head = rdfNil;
+        BNode last = null;
+        while (true) {
+            final int event = xml.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                final BNode cell = generateBNode();
+                if (last == null) {
+                    head = cell;
+                } else {
+                    handler.handleTriple(last, rdfRest, cell);
+                }
+                handler.handleTriple(cell, rdfFirst, parseNodeElement(base, lang));
+                last = cell;
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                break;
+            } else {
+                checkNoText(event);
+            }
+        }
+        if (last != null) {
+            handler.handleTriple(last, rdfRest, rdfNil);
+        }
+        return head;
+    }
+
+    /**
+     * Write out the content of a rdf:parseType="Literal" property element,
+     * the reader is left on the end element of the property
+     */
+    private String readXmlLiteral() throws XMLStreamException {
+        final StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        while (true) {
+            final int event = xml.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                depth++;
+                sb.append('<');
+                appendName(sb, xml.getPrefix(), xml.getLocalName());
+                for (int i = 0; i < xml.getNamespaceCount(); i++) {
+                    sb.append(" xmlns");
+                    final String prefix = xml.getNamespacePrefix(i);
+                    if (prefix != null && prefix.length() != 0) {
+                        sb.append(':').append(prefix);
+                    }
+                    sb.append("=\"");
+                    appendEscaped(sb, xml.getNamespaceURI(i), true);
+                    sb.append('"');
+                }
+                for (int i = 0; i < xml.getAttributeCount(); i++) {
+                    sb.append(' ');
+                    appendName(sb, xml.getAttributePrefix(i), xml.getAttributeLocalName(i));
+                    sb.append("=\"");
+                    appendEscaped(sb, xml.getAttributeValue(i), true);
+                    sb.append('"');
+                }
+                sb.append('>');
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                if (depth == 0) {
+                    return sb.toString();
+                }
+                depth--;
+                sb.append("</");
+                appendName(sb, xml.getPrefix(), xml.getLocalName());
+                sb.append('>');
+            } else if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA
+                    || event == XMLStreamReader.SPACE || event == XMLStreamReader.ENTITY_REFERENCE) {
+                appendEscaped(sb, xml.getText(), false);
+            }
+        }
+    }
+
+    private static void appendName(StringBuilder sb, String prefix, String localName) {
+        if (prefix != null && prefix.length() != 0) {
+            sb.append(prefix).append(':');
+        }
+        sb.append(localName);
+    }
+
+    private static void appendEscaped(StringBuilder sb, String s, boolean attribute) {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '&') {
+                sb.append("&amp;");
+            } else if (c == '<') {
+                sb.append("&lt;");
+            } else if (c == '>' && !attribute) {
+                sb.append("&gt;");
+            } else if (c == '"' && attribute) {
+                sb.append("&quot;");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Pass on the triple, and the triples reifying it if the property element has an rdf:ID
+     */
+    private void emit(SparqlResource subject, IRI predicate, SparqlResource object, String id, String base) {
+        handler.handleTriple(subject, predicate, object);
+        if (id != null) {
+            final IRI statement = createIRI(IriResolver.resolve(base, "#" + id));
+            handler.handleTriple(statement, rdfType, createIRI(RDF_NS + "Statement"));
+            handler.handleTriple(statement, createIRI(RDF_NS + "subject"), subject);
+            handler.handleTriple(statement, createIRI(RDF_NS + "predicate"), predicate);
+            handler.handleTriple(statement, createIRI(RDF_NS + "object"), object);
+        }
+    }
+
+    /**
+     * Pass on the triples of the property attributes of the current element
+     */
+    private void parsePropertyAttributes(SparqlResource subject, String base, String lang) throws XMLStreamException {
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            final String namespace = xml.getAttributeNamespace(i);
+            final String localName = xml.getAttributeLocalName(i);
+            if (!isPropertyAttribute(namespace, localName)) {
+                continue;
+            }
+            final String value = xml.getAttributeValue(i);
+            if (RDF_NS.equals(namespace) && "type".equals(localName)) {
+                handler.handleTriple(subject, rdfType, createIRI(IriResolver.resolve(base, value)));
+            } else {
+                handler.handleTriple(subject, elementIri(namespace, localName), createLiteral(value, null, lang));
+            }
+        }
+    }
+
+    private boolean hasPropertyAttributes() {
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            if (isPropertyAttribute(xml.getAttributeNamespace(i), xml.getAttributeLocalName(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Attributes other than the syntax ones of RDF and XML are properties,
+     * attributes without a namespace are ignored
+     */
+    private static boolean isPropertyAttribute(String namespace, String localName) {
+        if (namespace == null || namespace.length() == 0 || XMLConstants.XML_NS_URI.equals(namespace)) {
+            return false;
+        }
+        if (!RDF_NS.equals(namespace)) {
+            return true;
+        }
+        return !("about".equals(localName) || "ID".equals(localName) || "nodeID".equals(localName)
+                || "resource".equals(localName) || "parseType".equals(localName) || "datatype".equals(localName)
+                || "aboutEach".equals(localName) || "aboutEachPrefix".equals(localName) || "bagID".equals(localName));
+    }
+
+    private boolean isRdf(String localName) {
+        return RDF_NS.equals(xml.getNamespaceURI()) && localName.equals(xml.getLocalName());
+    }
+
+    private String rdfAttribute(String localName) {
+        return xml.getAttributeValue(RDF_NS, localName);
+    }
+
+    /**
+     * @return the base of the current element, from its xml:base or the one inherited
+     */
+    private String base(String base) {
+        final String xmlBase = xml.getAttributeValue(XMLConstants.XML_NS_URI, "base");
+        if (xmlBase == null) {
+            return base;
+        }
+        return IriResolver.resolve(base, xmlBase);
+    }
+
+    /**
+     * @return the language of the current element, from its xml:lang or the one inherited
+     */
+    private String language(String lang) {
+        final String xmlLang = xml.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+        if (xmlLang == null) {
+            return lang;
+        }
+        return xmlLang.length() == 0 ? null : xmlLang;
+    }
+
+    private IRI elementIri() throws XMLStreamException {
+        final String namespace = xml.getNamespaceURI();
+        if (namespace == null || namespace.length() == 0) {
+            throw error("element " + xml.getLocalName() + " has no namespace");
+        }
+        return elementIri(namespace, xml.getLocalName());
+    }
+
+    /**
+     * The IRI of an element or attribute name, element names repeat
+     * from one node to the next, so their IRIs are cached
+     */
+    private IRI elementIri(String namespace, String localName) {
+        if (elementIriCount >= MAX_ELEMENT_IRIS) {
+            elementIris.clear();
+            elementIriCount = 0;
+        }
+        Map<String, IRI> names = elementIris.get(namespace);
+        if (names == null) {
+            names = new HashMap<String, IRI>();
+            elementIris.put(namespace, names);
+        }
+        IRI iri = names.get(localName);
+        if (iri == null) {
+            iri = createIRI(namespace + localName);
+            names.put(localName, iri);
+            elementIriCount++;
+        }
+        return iri;
+    }
+
+    /**
+     * Only whitespace, comments and processing instructions may come between elements
+     */
+    private void checkNoText(int event) throws XMLStreamException {
+        if ((event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA) && !xml.isWhiteSpace()) {
+            throw error("unexpected text");
+        }
+    }
+
+    private void checkNoElement() throws XMLStreamException {
+        if (xml.getEventType() == XMLStreamReader.START_ELEMENT) {
+            throw error("unexpected element in an empty property element");
+        }
+        checkNoText(xml.getEventType());
+    }
+
+    private static boolean isWhitespace(char[] chars, int length) {
+        for (int i = 0; i < length; i++) {
+            final char c = chars[i];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureText(int length) {
+        if (length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, length));
+        }
+    }
+
+    private SprotocolException error(String message) {
+        return new SprotocolException(String.format("Invalid RDF/XML at line %d, %s",
+                xml.getLocation().getLineNumber(), message), null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException("Error closing XML stream", e);
+        } finally {
+            in.close();
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
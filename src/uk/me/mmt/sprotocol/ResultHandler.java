@@ -0,0 +1,74 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.List;
+
+/**
+ * A push style (SAX like) callback interface for SPARQL results
+ * 
+ * The results parsers call the handler directly as they decode the response, 
+ * so no SelectResultRow or SelectResultSet is ever built. This is meant for 
+ * consumers which only aggregate or forward the results.
+ * 
+ * For SELECT results the calls are: startResult, handleRow for each result, endResult
+ * For ASK results the calls are: startResult, handleBoolean, endResult
+ */
+public interface ResultHandler {
+
+    /**
+     * Called once before any row or boolean is handled
+     * 
+     * @param head the variables of the result, in the order used by handleRow
+     * @throws SprotocolException to abort the parse
+     */
+    void startResult(List<String> head) throws SprotocolException;
+
+    /**
+     * Called once per result row
+     * 
+     * The array is indexed by the position of each variable in the head, 
+     * unbound variables are 'null'. The array is owned by the parser and is 
+     * reused for the next row, so it is only valid until this call returns.
+     * 
+     * @param bindings the values of this row
+     * @throws SprotocolException to abort the parse
+     */
+    void handleRow(SparqlResource[] bindings) throws SprotocolException;
+
+    /**
+     * Called once with the answer of an ASK query
+     * 
+     * @param result the boolean returned by the SPARQL endpoint
+     * @throws SprotocolException to abort the parse
+     */
+    void handleBoolean(boolean result) throws SprotocolException;
+
+    /**
+     * Called once after the last row or boolean has been handled
+     * 
+     * @throws SprotocolException
+     */
+    void endResult() throws SprotocolException;
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
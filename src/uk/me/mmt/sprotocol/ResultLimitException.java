@@ -0,0 +1,92 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * Thrown when the results of a request go over one of its ResultLimits, the
+ * connection to the SPARQL endpoint has then been aborted
+ */
+public class ResultLimitException extends SprotocolException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limits of ResultLimits
+     */
+    public enum Limit {
+        BYTES,
+        ROWS,
+        TERM_LENGTH
+    }
+
+    private final Limit limit;
+    private final long maximum;
+    private final long bytesRead;
+    private final long rowsRead;
+
+    public ResultLimitException(Limit limit, long maximum, long bytesRead, long rowsRead) {
+        super(String.format("The results went over the limit of %d %s, after reading %d bytes and %d rows", maximum, describe(limit), bytesRead, rowsRead), null);
+        this.limit = limit;
+        this.maximum = maximum;
+        this.bytesRead = bytesRead;
+        this.rowsRead = rowsRead;
+    }
+
+    private static String describe(Limit limit) {
+        switch (limit) {
+            case BYTES:
+                return "bytes";
+            case ROWS:
+                return "rows";
+            default:
+                return "chars per term";
+        }
+    }
+
+    /**
+     * @return the limit gone over
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the value of the limit gone over
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * @return the bytes of the response body read when the limit was gone over
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the rows or triples parsed when the limit was gone over
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,138 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks the ResultLimits of one request as its response is read and parsed
+ * 
+ * The bytes are counted by the stream returned by limit(), rows and triples by the parsers
+ * given the limiter, which also check the length of each term they create. Going over a
+ * limit disconnects the connection the response is read from, so the rest of the response
+ * is not transferred, and throws a ResultLimitException.
+ * 
+ * Rows may be counted by several threads, when chunks of a response are parsed in parallel.
+ */
+final class ResultLimiter {
+
+    private final ResultLimits limits;
+    private final HttpURLConnection connection;
+    private volatile long bytesRead;
+    private final AtomicLong rowsRead = new AtomicLong();
+
+    /**
+     * @param connection the connection to disconnect when a limit is gone over, may be 'null'
+     */
+    ResultLimiter(ResultLimits limits, HttpURLConnection connection) {
+        this.limits = limits;
+        this.connection = connection;
+    }
+
+    ResultLimits getLimits() {
+        return this.limits;
+    }
+
+    /**
+     * @return in, counting the bytes read from it, for the limit on bytes and to report how much was read
+     */
+    InputStream limit(InputStream in) {
+        return new LimitedInputStream(in);
+    }
+
+    /**
+     * Count one more row or triple
+     *
+     * @throws ResultLimitException if there are then too many
+     */
+    void countRow() throws ResultLimitException {
+        if (this.rowsRead.incrementAndGet() > this.limits.getMaxRows()) {
+            exceeded(ResultLimitException.Limit.ROWS, this.limits.getMaxRows());
+        }
+    }
+
+    /**
+     * @throws ResultLimitException if a term of that length is too long
+     */
+    void checkTermLength(int length) throws ResultLimitException {
+        if (length > this.limits.getMaxTermLength()) {
+            exceeded(ResultLimitException.Limit.TERM_LENGTH, this.limits.getMaxTermLength());
+        }
+    }
+
+    private void exceeded(ResultLimitException.Limit limit, long maximum) throws ResultLimitException {
+        if (this.connection != null) {
+            this.connection.disconnect();
+        }
+        throw new ResultLimitException(limit, maximum, this.bytesRead, this.rowsRead.get());
+    }
+
+    /**
+     * Counts the bytes of the response body as they are read
+     */
+    private final class LimitedInputStream extends FilterInputStream {
+
+        LimitedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws ResultLimitException {
+            // only the thread reading the response writes bytesRead
+            final long read = bytesRead + bytes;
+            bytesRead = read;
+            if (read > limits.getMaxBytes()) {
+                exceeded(ResultLimitException.Limit.BYTES, limits.getMaxBytes());
+            }
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,94 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * Limits on the size of the results of a request, checked as the response is read,
+ * see SparqlQueryProtocolClient.setResultLimits
+ * 
+ * The bytes are those of the response body, rows are result rows for SELECT queries
+ * and triples for CONSTRUCT and DESCRIBE queries, and the length of a term is the length
+ * in chars of the value of an IRI or literal. Each limit is Long.MAX_VALUE or 
+ * Integer.MAX_VALUE when not set. Limits are immutable, the with methods return new ones.
+ */
+public final class ResultLimits {
+
+    /**
+     * No limits, the default
+     */
+    public static final ResultLimits NONE = new ResultLimits(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long maxBytes;
+    private final long maxRows;
+    private final int maxTermLength;
+
+    /**
+     * @param maxBytes the most bytes of response body read
+     * @param maxRows the most rows or triples parsed
+     * @param maxTermLength the longest value of a term, in chars
+     */
+    public ResultLimits(long maxBytes, long maxRows, int maxTermLength) {
+        if (maxBytes < 0 || maxRows < 0 || maxTermLength < 0) {
+            throw new IllegalArgumentException("Result limits can not be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.maxRows = maxRows;
+        this.maxTermLength = maxTermLength;
+    }
+
+    public ResultLimits withMaxBytes(long bytes) {
+        return new ResultLimits(bytes, this.maxRows, this.maxTermLength);
+    }
+
+    public ResultLimits withMaxRows(long rows) {
+        return new ResultLimits(this.maxBytes, rows, this.maxTermLength);
+    }
+
+    public ResultLimits withMaxTermLength(int chars) {
+        return new ResultLimits(this.maxBytes, this.maxRows, chars);
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public long getMaxRows() {
+        return this.maxRows;
+    }
+
+    public int getMaxTermLength() {
+        return this.maxTermLength;
+    }
+
+    /**
+     * @return whether none of the limits is set
+     */
+    boolean isUnlimited() {
+        return this.maxBytes == Long.MAX_VALUE && this.maxRows == Long.MAX_VALUE && this.maxTermLength == Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultLimits [maxBytes=" + this.maxBytes + ", maxRows=" + this.maxRows + ", maxTermLength=" + this.maxTermLength + "]";
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
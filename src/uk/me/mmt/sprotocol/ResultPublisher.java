@@ -0,0 +1,218 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Flow.Publisher of the results of a query, read from the response only as fast as
+ * subscribers ask for them
+ * 
+ * Each subscription sends the query of its own, once the subscriber first requests
+ * results. Results are pulled from the response on the executor while there is demand.
+ * Once demand is exhausted the task returns, leaving the rest of the response unread on
+ * the connection, so the server is held back by TCP rather than by a blocked thread, and
+ * another task is started when demand returns. The calls to a subscriber never overlap.
+ */
+final class ResultPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * Sends the query and opens an iterator over its results, called once per subscription
+     */
+    interface Opener<T> {
+        /**
+         * @return Iterator over the results, closed at the end if it is Closeable
+         */
+        Iterator<T> open() throws SprotocolException, IOException;
+    }
+
+    private final Opener<T> opener;
+    private final Executor executor;
+
+    ResultPublisher(Opener<T> opener, Executor executor) {
+        this.opener = opener;
+        this.executor = executor;
+    }
+
+    /**
+     * The executor of publishers which are not given one. The tasks block reading the
+     * response, so they run on a cached pool of daemon threads of their own, rather
+     * than tying up the workers of the common ForkJoinPool used by parallel streams.
+     */
+    static Executor defaultExecutor() {
+        return DefaultExecutor.EXECUTOR;
+    }
+
+    /**
+     * Holds the default executor, created when first used
+     */
+    private static final class DefaultExecutor {
+        static final Executor EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                final Thread thread = new Thread(task, "sprotocol-publisher-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber can not be 'null'");
+        }
+        subscriber.onSubscribe(new ResultSubscription(subscriber));
+    }
+
+    /**
+     * The subscription of one subscriber, with the results of its own query
+     */
+    private final class ResultSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // requests and cancels not yet seen by the draining task, which runs while it is non zero
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // only used by the draining task
+        private Iterator<T> results;
+        private boolean done;
+
+        ResultSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("A subscription must request a positive number of results, not " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n;
+                    if (next < 0) {
+                        // unbounded
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!demand.compareAndSet(current, next));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Pass on results while there is demand, until no more signals are pending
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                drain();
+                missed = pendingSignals.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                finish();
+                return;
+            }
+            if (invalidRequest != null) {
+                finish();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+
+            try {
+                if (results == null) {
+                    results = opener.open();
+                }
+                while (demand.get() > 0 && !cancelled) {
+                    if (!results.hasNext()) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    final T result = results.next();
+                    demand.decrementAndGet();
+                    subscriber.onNext(result);
+                }
+                if (cancelled) {
+                    finish();
+                }
+            } catch (final IOException e) {
+                finish();
+                subscriber.onError(new SprotocolException("IOException caught by sprotocol", e));
+            } catch (final RuntimeException e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        /**
+         * Release the connection, nothing more is passed on after this
+         */
+        private void finish() {
+            done = true;
+            if (results instanceof Closeable) {
+                try {
+                    ((Closeable) results).close();
+                } catch (final IOException e) {
+                    // nothing more can be passed on
+                }
+            }
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
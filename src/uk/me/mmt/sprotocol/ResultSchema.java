@@ -0,0 +1,116 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hints of the kind of term each variable of SELECT results is bound to
+ * 
+ * For results of a fixed shape, e.g. "?s is always an IRI, ?n always an xsd:integer",
+ * the parsers can then read each column the way its hint says, rather than find out
+ * what kind of term each value is. A value which does not match the hint of its
+ * variable is still parsed, the generic way, so a hint is never wrong, only slower.
+ * Variables without a hint are always parsed the generic way.
+ * 
+ * <pre>
+ * new ResultSchema().iri("s").typedLiteral("n", SprotocolConstants.XSD_INTEGER)
+ * </pre>
+ */
+public final class ResultSchema {
+
+    private final Map<String, TermType> types = new HashMap<String, TermType>();
+    private final Map<String, String> datatypes = new HashMap<String, String>();
+
+    /**
+     * @param variable name of the variable, with or without the leading ? or $
+     * @return this schema
+     */
+    public ResultSchema iri(String variable) {
+        return hint(variable, TermType.IRI, null);
+    }
+
+    /**
+     * @param variable name of the variable, with or without the leading ? or $
+     * @return this schema
+     */
+    public ResultSchema bnode(String variable) {
+        return hint(variable, TermType.BNODE, null);
+    }
+
+    /**
+     * A literal without a datatype, which may have a language
+     * 
+     * @param variable name of the variable, with or without the leading ? or $
+     * @return this schema
+     */
+    public ResultSchema literal(String variable) {
+        return hint(variable, TermType.LITERAL, null);
+    }
+
+    /**
+     * @param variable name of the variable, with or without the leading ? or $
+     * @param datatype IRI of the datatype, e.g. SprotocolConstants.XSD_INTEGER
+     * @return this schema
+     */
+    public ResultSchema typedLiteral(String variable, String datatype) {
+        if (null == datatype) {
+            throw new IllegalArgumentException("The datatype of a typed literal can not be 'null'");
+        }
+        return hint(variable, TermType.TYPED_LITERAL, datatype);
+    }
+
+    /**
+     * @return the kind of term the variable is bound to, 'null' if there is no hint
+     */
+    public TermType getType(String variable) {
+        return types.get(name(variable));
+    }
+
+    /**
+     * @return the datatype of a TYPED_LITERAL variable, otherwise 'null'
+     */
+    public String getDatatype(String variable) {
+        return datatypes.get(name(variable));
+    }
+
+    private ResultSchema hint(String variable, TermType type, String datatype) {
+        final String name = name(variable);
+        types.put(name, type);
+        if (datatype == null) {
+            datatypes.remove(name);
+        } else {
+            datatypes.put(name, datatype);
+        }
+        return this;
+    }
+
+    private static String name(String variable) {
+        if (null == variable || variable.length() == 0) {
+            throw new IllegalArgumentException("A variable name can not be empty");
+        }
+        final char first = variable.charAt(0);
+        return (first == '?' || first == '$') ? variable.substring(1) : variable;
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
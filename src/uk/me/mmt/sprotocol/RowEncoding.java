@@ -0,0 +1,210 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary encoding of the rows of SELECT results kept outside of the Java heap,
+ * see SelectResultSetMapped and SelectResultSetOffHeap
+ * 
+ * Each term of a row is a tag byte, which is UNBOUND or the kind of term plus whether it
+ * has a datatype and a language. A bound term is then followed by the UTF-8 bytes of its
+ * value, preceded by their length as a varint, then by the varint index of its datatype 
+ * and language in a table of the encoding, as a result only uses a few distinct ones.
+ * 
+ * Rows are decoded with absolute gets, so many threads can decode from the same buffer,
+ * once the encoding is no longer written to.
+ */
+final class RowEncoding {
+
+    private static final int UNBOUND = 0;
+    private static final int IRI_TERM = 1;
+    private static final int BNODE_TERM = 2;
+    private static final int LITERAL_TERM = 3;
+    private static final int KIND_MASK = 0x0F;
+    private static final int HAS_DATATYPE = 0x10;
+    private static final int HAS_LANGUAGE = 0x20;
+
+    // the datatypes and languages of the literals encoded, by index
+    private final List<String> names = new ArrayList<String>();
+    private final Map<String,Integer> nameIndexes = new HashMap<String,Integer>();
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+    /**
+     * Encode a row
+     * 
+     * @param bindings the terms of the row, 'null' for unbound variables
+     * @return the encoded row, in a buffer reused by the next call
+     */
+    ByteBuffer encode(SparqlResource[] bindings) {
+        this.scratch.clear();
+        for (final SparqlResource term : bindings) {
+            if (term == null) {
+                ensureRemaining(1);
+                this.scratch.put((byte) UNBOUND);
+            } else if (term.isIRI()) {
+                putTerm(IRI_TERM, term.getValue(), null, null);
+            } else if (term.isBnode()) {
+                putTerm(BNODE_TERM, term.getValue(), null, null);
+            } else {
+                final Literal literal = term.asLiteral();
+                putTerm(LITERAL_TERM, literal.getValue(), literal.getDatatype(), literal.getLanguage());
+            }
+        }
+        this.scratch.flip();
+        return this.scratch;
+    }
+
+    /**
+     * Decode one term of a row
+     * 
+     * @param buf the buffer holding the row
+     * @param rowStart the index of the row in the buffer
+     * @param index the position of the term in the row
+     * @return the term, or 'null' if it is unbound
+     */
+    SparqlResource decode(ByteBuffer buf, int rowStart, int index) {
+        int pos = rowStart;
+        for (int i = 0; i < index; i++) {
+            pos = skip(buf, pos);
+        }
+
+        final int tag = buf.get(pos++);
+        if (tag == UNBOUND) {
+            return null;
+        }
+        final int length = readVarint(buf, pos);
+        pos += varintSize(length);
+        final byte[] bytes = new byte[length];
+        buf.get(pos, bytes);
+        pos += length;
+        final String value = new String(bytes, StandardCharsets.UTF_8);
+
+        switch (tag & KIND_MASK) {
+            case IRI_TERM:
+                return new IRI(value);
+            case BNODE_TERM:
+                return new BNode(value);
+            default:
+                String datatype = null;
+                String language = null;
+                if ((tag & HAS_DATATYPE) != 0) {
+                    final int name = readVarint(buf, pos);
+                    pos += varintSize(name);
+                    datatype = this.names.get(name);
+                }
+                if ((tag & HAS_LANGUAGE) != 0) {
+                    language = this.names.get(readVarint(buf, pos));
+                }
+                return new Literal(value, datatype, language);
+        }
+    }
+
+    /**
+     * @return the index after the term at pos
+     */
+    private static int skip(ByteBuffer buf, int pos) {
+        final int tag = buf.get(pos++);
+        if (tag == UNBOUND) {
+            return pos;
+        }
+        final int length = readVarint(buf, pos);
+        pos += varintSize(length) + length;
+        if ((tag & HAS_DATATYPE) != 0) {
+            pos += varintSize(readVarint(buf, pos));
+        }
+        if ((tag & HAS_LANGUAGE) != 0) {
+            pos += varintSize(readVarint(buf, pos));
+        }
+        return pos;
+    }
+
+    private void putTerm(int kind, String value, String datatype, String language) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureRemaining(1 + 5 + bytes.length + 5 + 5);
+        this.scratch.put((byte) (kind | (datatype != null ? HAS_DATATYPE : 0) | (language != null ? HAS_LANGUAGE : 0)));
+        putVarint(bytes.length);
+        this.scratch.put(bytes);
+        if (datatype != null) {
+            putVarint(nameIndex(datatype));
+        }
+        if (language != null) {
+            putVarint(nameIndex(language));
+        }
+    }
+
+    private int nameIndex(String name) {
+        Integer index = this.nameIndexes.get(name);
+        if (index == null) {
+            index = Integer.valueOf(this.names.size());
+            this.names.add(name);
+            this.nameIndexes.put(name, index);
+        }
+        return index.intValue();
+    }
+
+    private void ensureRemaining(int length) {
+        if (this.scratch.remaining() < length) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(this.scratch.capacity() * 2, this.scratch.position() + length));
+            this.scratch.flip();
+            grown.put(this.scratch);
+            this.scratch = grown;
+        }
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            this.scratch.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.scratch.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer buf, int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get(pos++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
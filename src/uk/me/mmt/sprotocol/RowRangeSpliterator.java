@@ -0,0 +1,96 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A Spliterator over the rows of an in-memory result set, by row number
+ * 
+ * Splitting halves the range of rows, without touching them, so parallel streams
+ * get balanced chunks straight away. Rows are only created as they are passed on.
+ */
+final class RowRangeSpliterator implements Spliterator<SelectResultRow> {
+
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+
+    private final IntFunction<SelectResultRow> rows;
+    private int index;
+    private final int fence;
+
+    /**
+     * @param rows creates the row of a row number
+     * @param origin the first row
+     * @param fence the row after the last
+     */
+    RowRangeSpliterator(IntFunction<SelectResultRow> rows, int origin, int fence) {
+        this.rows = rows;
+        this.index = origin;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super SelectResultRow> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        if (index < fence) {
+            action.accept(rows.apply(index++));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super SelectResultRow> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        while (index < fence) {
+            action.accept(rows.apply(index++));
+        }
+    }
+
+    @Override
+    public Spliterator<SelectResultRow> trySplit() {
+        final int mid = (index + fence) >>> 1;
+        if (mid <= index) {
+            return null;
+        }
+        final Spliterator<SelectResultRow> prefix = new RowRangeSpliterator(rows, index, mid);
+        index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
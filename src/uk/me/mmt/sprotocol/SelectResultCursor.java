@@ -0,0 +1,157 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A cursor over SPARQL SELECT results, parsed one row at a time into a single reused row
+ * 
+ * Unlike the iterator of a SelectResultSet, next() returns the same SelectResultRow every
+ * time, whose values change as the cursor moves on. A row is only valid until the next
+ * call to next(), copy its values to keep them. Terms repeated from one row to the next
+ * may be the same objects, as the terms themselves are immutable they can be kept.
+ * 
+ * The underlying connection is closed once the last row has been read, close the
+ * cursor to release it earlier. IOExceptions are thrown wrapped in SprotocolExceptions.
+ */
+public final class SelectResultCursor implements Iterator<SelectResultRow>, Closeable {
+
+    private final SparqlResultsParser parser;
+    private final SelectResultHead head;
+    private final CursorRow row;
+    // the bindings read ahead by hasNext, swapped with those of the row by next
+    private SparqlResource[] pending;
+    private boolean hasPending;
+    private boolean finished;
+
+    SelectResultCursor(SparqlResultsParser parser) {
+        this.parser = parser;
+        this.parser.setReuseRepeatedTerms(true);
+        this.head = parser.getHead();
+        this.row = new CursorRow(head, new SparqlResource[head.size()]);
+        this.pending = new SparqlResource[head.size()];
+    }
+
+    /**
+     * @return the variables of the results
+     */
+    public List<String> getHead() {
+        return head;
+    }
+
+    /**
+     * @return the position of the variable in the head, to be used with SelectResultRow.get(int), 
+     * or -1 if it is not part of the head
+     */
+    public int indexOf(String variable) {
+        return head.indexOf(variable);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            if (!hasPending && !finished) {
+                if (parser.nextRow(pending)) {
+                    hasPending = true;
+                } else {
+                    close();
+                }
+            }
+        } catch (final IOException e) {
+            closeQuietly();
+            throw new SprotocolException("IOException caught by sprotocol", e);
+        } catch (final SprotocolException e) {
+            closeQuietly();
+            throw e;
+        }
+        return hasPending;
+    }
+
+    /**
+     * @return the row of the cursor, now holding the values of the next result
+     */
+    @Override
+    public SelectResultRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final SparqlResource[] bindings = row.bindings;
+        row.bindings = pending;
+        pending = bindings;
+        hasPending = false;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            parser.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (final IOException e) {
+            // the original exception is more useful
+        }
+    }
+
+    /**
+     * The one row of a cursor, its bindings are replaced as the cursor moves on
+     */
+    private static final class CursorRow implements SelectResultRow {
+        private final SelectResultHead head;
+        private SparqlResource[] bindings;
+
+        CursorRow(SelectResultHead head, SparqlResource[] bindings) {
+            this.head = head;
+            this.bindings = bindings;
+        }
+
+        @Override
+        public SparqlResource get(String variable) {
+            final int index = head.indexOf(variable);
+            if (index == -1) {
+                return null;
+            }
+            return bindings[index];
+        }
+
+        @Override
+        public SparqlResource get(int index) {
+            return bindings[index];
+        }
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
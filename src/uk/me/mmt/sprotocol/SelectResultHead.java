@@ -0,0 +1,96 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The immutable head (list of variables) of a SPARQL result
+ * 
+ * The rows of a result share their head, and store their values in an array
+ * indexed by the position of each variable in it. indexOf is a constant time 
+ * lookup, so a variable can be resolved once and then read from every row with 
+ * SelectResultRow.get(int).
+ */
+public final class SelectResultHead extends AbstractList<String> implements RandomAccess {
+
+    private final String[] variables;
+    private final Map<String,Integer> index;
+
+    public SelectResultHead(List<String> variables) {
+        if (null == variables) {
+            throw new IllegalArgumentException("The head of a SPARQL result can not be 'null'");
+        }
+
+        this.variables = variables.toArray(new String[variables.size()]);
+        this.index = new HashMap<String,Integer>(this.variables.length * 2);
+        for (int i = 0; i < this.variables.length; i++) {
+            if (null == this.variables[i]) {
+                throw new IllegalArgumentException("A variable of a SPARQL result can not be 'null'");
+            }
+            // the first occurrence wins, as it would for a List
+            if (!this.index.containsKey(this.variables[i])) {
+                this.index.put(this.variables[i], Integer.valueOf(i));
+            }
+        }
+    }
+
+    /**
+     * @return variables itself if it already is a SelectResultHead, otherwise a copy of it
+     */
+    static SelectResultHead valueOf(List<String> variables) {
+        if (variables instanceof SelectResultHead) {
+            return (SelectResultHead) variables;
+        }
+        return new SelectResultHead(variables);
+    }
+
+    @Override
+    public String get(int i) {
+        return variables[i];
+    }
+
+    @Override
+    public int size() {
+        return variables.length;
+    }
+
+    /**
+     * @return the position of the variable in the head, or -1 if it is not part of it
+     */
+    @Override
+    public int indexOf(Object variable) {
+        final Integer i = index.get(variable);
+        return (null == i) ? -1 : i.intValue();
+    }
+
+    @Override
+    public boolean contains(Object variable) {
+        return index.containsKey(variable);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
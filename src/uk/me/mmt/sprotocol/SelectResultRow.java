@@ -25,8 +25,22 @@ package uk.me.mmt.sprotocol;
  */
 public interface SelectResultRow {
 
+    /**
+     * @return the value of the variable, 'null' if it is unbound or not in the head
+     */
     SparqlResource get(String variable);
 
+    /**
+     * The rows of the result sets of this library all support this. Rows which do
+     * not know the head they belong to can not, and throw UnsupportedOperationException.
+     * 
+     * @param index the position of the variable in the head, see SelectResultSet.indexOf
+     * @return the value of the variable, 'null' if it is unbound
+     */
+    default SparqlResource get(int index) {
+        throw new UnsupportedOperationException("This SelectResultRow can not be read by position");
+    }
+
 }
 
 /* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,106 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over SPARQL SELECT results, parsed from the response as they are asked for
+ * 
+ * Unlike SelectResultCursor each result is a SelectResultRow of its own, which may be
+ * kept or handed to another thread. The underlying connection is closed once the last
+ * row has been read, close the iterator to release it earlier. IOExceptions are thrown
+ * wrapped in SprotocolExceptions.
+ */
+final class SelectResultRowIterator implements Iterator<SelectResultRow>, Closeable {
+
+    private final SparqlResultsParser parser;
+    private final SelectResultHead head;
+    // the bindings read ahead by hasNext, or 'null'
+    private SparqlResource[] pending;
+    private boolean finished;
+
+    SelectResultRowIterator(SparqlResultsParser parser) {
+        this.parser = parser;
+        this.head = parser.getHead();
+    }
+
+    SelectResultHead getHead() {
+        return head;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            if (pending == null && !finished) {
+                final SparqlResource[] bindings = new SparqlResource[head.size()];
+                if (parser.nextRow(bindings)) {
+                    pending = bindings;
+                } else {
+                    close();
+                }
+            }
+        } catch (final IOException e) {
+            closeQuietly();
+            throw new SprotocolException("IOException caught by sprotocol", e);
+        } catch (final SprotocolException e) {
+            closeQuietly();
+            throw e;
+        }
+        return pending != null;
+    }
+
+    @Override
+    public SelectResultRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final SelectResultRow row = new SelectResultRowSimple(head, pending);
+        pending = null;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            parser.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (final IOException e) {
+            // the original exception is more useful
+        }
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
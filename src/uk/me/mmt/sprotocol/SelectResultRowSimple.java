@@ -20,27 +20,40 @@
  */
 package uk.me.mmt.sprotocol;
 
-import java.util.Map;
-
 /**
  * A simple implementation of the SelectResult interface 
+ * The values are held in an array indexed as the head, which is shared by all rows of a result
  * This can not be null
  */
 public final class SelectResultRowSimple implements SelectResultRow {
     
-    private Map<String, SparqlResource> result;
+    private final SelectResultHead head;
+    private final SparqlResource[] result;
     
-    protected SelectResultRowSimple(Map<String, SparqlResource> selectResult) {
-        if (null == selectResult) {
+    protected SelectResultRowSimple(SelectResultHead head, SparqlResource[] selectResult) {
+        if (null == head || null == selectResult) {
             throw new IllegalArgumentException("The value of a 'SelectResultRow' SPARQL Result can not be 'null'");
         }
+        if (head.size() != selectResult.length) {
+            throw new IllegalArgumentException("A 'SelectResultRow' needs exactly one value per variable");
+        }
+        this.head = head;
         this.result = selectResult;
     }
 
     
     @Override
     public SparqlResource get(String variable) {
-        return result.get(variable);
+        final int index = head.indexOf(variable);
+        if (index == -1) {
+            return null;
+        }
+        return result[index];
+    }
+
+    @Override
+    public SparqlResource get(int index) {
+        return result[index];
     }
 
 }
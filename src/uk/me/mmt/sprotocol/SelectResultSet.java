@@ -22,14 +22,38 @@ package uk.me.mmt.sprotocol;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface SelectResultSet extends Iterable<SelectResultRow> {
 
     public List<String> getHead();
+
+    /**
+     * @return the position of the variable in the head, to be used with SelectResultRow.get(int), 
+     * or -1 if it is not part of the head
+     */
+    public default int indexOf(String variable) {
+        return getHead().indexOf(variable);
+    }
     
     @Override
     public Iterator<SelectResultRow> iterator();
-    
+
+    /**
+     * @return a sequential Stream of the rows, in order
+     */
+    public default Stream<SelectResultRow> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a possibly parallel Stream of the rows, which splits as well as
+     * the spliterator of the result set does
+     */
+    public default Stream<SelectResultRow> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
 
 }
 
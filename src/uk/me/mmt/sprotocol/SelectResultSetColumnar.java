@@ -0,0 +1,203 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.IntFunction;
+
+/**
+ * SelectResultSetColumnar an immutable, column oriented, implementation of SelectResultSet
+ * 
+ * The results are parsed once and stored as one array per variable, so they can
+ * be iterated over many times without being parsed again, and without a Map per row.
+ * Unbound values are stored as 'null'.
+ */
+public final class SelectResultSetColumnar implements SelectResultSet {
+
+    private final SelectResultHead head;
+    private final SparqlResource[][] columns;
+    private final int size;
+
+    /**
+     * @param head the variables
+     * @param columns one array per variable, each holding at least size values
+     * @param size the number of rows
+     */
+    SelectResultSetColumnar(List<String> head, SparqlResource[][] columns, int size) {
+        if (null == head || null == columns) {
+            throw new IllegalArgumentException("Neither the head or the columns of the SPARQL-RESULTS can be 'null'");
+        }
+        if (head.size() != columns.length) {
+            throw new IllegalArgumentException("There must be one column per variable");
+        }
+
+        this.head = SelectResultHead.valueOf(head);
+        this.size = size;
+        this.columns = new SparqlResource[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            this.columns[i] = (columns[i].length == size) ? columns[i] : Arrays.copyOf(columns[i], size);
+        }
+    }
+
+    /**
+     * Copy any SelectResultSet, e.g. a SelectResultSetTsv, into column form
+     * 
+     * @param results the result set to copy, it is iterated over once
+     * @return a SelectResultSetColumnar holding the same results
+     */
+    public static SelectResultSetColumnar copyOf(SelectResultSet results) {
+        if (results instanceof SelectResultSetColumnar) {
+            return (SelectResultSetColumnar) results;
+        }
+
+        final SelectResultSetColumnarBuilder builder = new SelectResultSetColumnarBuilder();
+        final List<String> vars = results.getHead();
+        builder.startResult(vars);
+        final SparqlResource[] bindings = new SparqlResource[vars.size()];
+        for (SelectResultRow row : results) {
+            for (int i = 0; i < bindings.length; i++) {
+                bindings[i] = row.get(vars.get(i));
+            }
+            builder.handleRow(bindings);
+        }
+        builder.endResult();
+        return builder.getResultSet();
+    }
+
+    @Override
+    public List<String> getHead() {
+        return head;
+    }
+
+    @Override
+    public int indexOf(String variable) {
+        return head.indexOf(variable);
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param variable a variable of the head
+     * @return an immutable view of the values of the variable, in row order, 'null' where unbound
+     * @throws IllegalArgumentException if variable is not in the head
+     */
+    public List<SparqlResource> getColumn(String variable) {
+        final int index = head.indexOf(variable);
+        if (index == -1) {
+            throw new IllegalArgumentException(String.format("'%s' is not a variable of this result", variable));
+        }
+        return getColumn(index);
+    }
+
+    /**
+     * @param index the position of the variable in the head
+     * @return an immutable view of the values of the variable, in row order, 'null' where unbound
+     */
+    public List<SparqlResource> getColumn(int index) {
+        return Collections.unmodifiableList(Arrays.asList(columns[index]));
+    }
+
+    /**
+     * @return the value of a variable in a row, or 'null' if it is unbound or not in the head
+     */
+    public SparqlResource get(int row, String variable) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+        final int index = head.indexOf(variable);
+        if (index == -1) {
+            return null;
+        }
+        return columns[index][row];
+    }
+
+    @Override
+    public Iterator<SelectResultRow> iterator() {
+        return new Iterator<SelectResultRow>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public SelectResultRow next() {
+                if (row >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new ColumnarRow(row++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return a Spliterator which splits by row number, for parallel streams
+     */
+    @Override
+    public Spliterator<SelectResultRow> spliterator() {
+        return new RowRangeSpliterator(new IntFunction<SelectResultRow>() {
+            @Override
+            public SelectResultRow apply(int row) {
+                return new ColumnarRow(row);
+            }
+        }, 0, size);
+    }
+
+    /**
+     * A row is only a view onto the columns, no values are copied
+     */
+    private final class ColumnarRow implements SelectResultRow {
+        private final int row;
+
+        private ColumnarRow(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public SparqlResource get(String variable) {
+            return SelectResultSetColumnar.this.get(row, variable);
+        }
+
+        @Override
+        public SparqlResource get(int index) {
+            return columns[index][row];
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
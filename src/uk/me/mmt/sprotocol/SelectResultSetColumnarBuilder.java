@@ -0,0 +1,86 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ResultHandler which appends the rows it is given to one array per variable,
+ * and builds a SelectResultSetColumnar from them
+ */
+final class SelectResultSetColumnarBuilder implements ResultHandler {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private List<String> head;
+    private SparqlResource[][] columns;
+    private int size;
+
+    @Override
+    public void startResult(List<String> head) {
+        this.head = head;
+        this.columns = new SparqlResource[head.size()][INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    @Override
+    public void handleRow(SparqlResource[] bindings) {
+        // with no variables there is nothing to store, only rows to count
+        if (columns.length > 0 && size == columns[0].length) {
+            grow();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i][size] = bindings[i];
+        }
+        size++;
+    }
+
+    private void grow() {
+        final int capacity = columns[0].length * 2;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Arrays.copyOf(columns[i], capacity);
+        }
+    }
+
+    @Override
+    public void handleBoolean(boolean result) {
+        // an ASK result is an empty result set
+    }
+
+    @Override
+    public void endResult() {
+        // nothing to do
+    }
+
+    /**
+     * @return the collected results, columns are trimmed to the number of rows
+     */
+    SelectResultSetColumnar getResultSet() {
+        if (head == null) {
+            throw new IllegalStateException("No result has been handled");
+        }
+        return new SelectResultSetColumnar(head, columns, size);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,183 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.IntFunction;
+
+/**
+ * SelectResultSetEncoded an immutable, dictionary encoded, implementation of SelectResultSet
+ * 
+ * Each row is stored as an int array of term IDs from a TermDictionary, indexed 
+ * as the head, with UNBOUND for unbound variables. The IDs can be used directly
+ * for grouping or joining, and decoded into terms with getDictionary().
+ */
+public final class SelectResultSetEncoded implements SelectResultSet {
+
+    /**
+     * The ID of an unbound variable
+     */
+    public static final int UNBOUND = -1;
+
+    private final SelectResultHead head;
+    private final TermDictionary dictionary;
+    private final int[] ids;
+    private final int size;
+
+    /**
+     * @param ids the IDs of the rows one after the other, at least size * head.size() of them
+     */
+    SelectResultSetEncoded(List<String> head, TermDictionary dictionary, int[] ids, int size) {
+        if (null == head || null == dictionary || null == ids) {
+            throw new IllegalArgumentException("Neither the head, dictionary or IDs of the SPARQL-RESULTS can be 'null'");
+        }
+        this.head = SelectResultHead.valueOf(head);
+        this.dictionary = dictionary;
+        this.size = size;
+        final int length = size * this.head.size();
+        this.ids = (ids.length == length) ? ids : Arrays.copyOf(ids, length);
+    }
+
+    @Override
+    public List<String> getHead() {
+        return head;
+    }
+
+    @Override
+    public int indexOf(String variable) {
+        return head.indexOf(variable);
+    }
+
+    /**
+     * @return the dictionary the IDs of this result belong to
+     */
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row the row number
+     * @param index the position of the variable in the head
+     * @return the ID of the value, or UNBOUND
+     */
+    public int getId(int row, int index) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+        if (index < 0 || index >= head.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Variables: " + head.size());
+        }
+        return ids[row * head.size() + index];
+    }
+
+    /**
+     * @param row the row number
+     * @return a copy of the IDs of the row, indexed as the head
+     */
+    public int[] getRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+        final int width = head.size();
+        return Arrays.copyOfRange(ids, row * width, (row + 1) * width);
+    }
+
+    @Override
+    public Iterator<SelectResultRow> iterator() {
+        return new Iterator<SelectResultRow>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public SelectResultRow next() {
+                if (row >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new EncodedRow(row++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return a Spliterator which splits by row number, for parallel streams
+     */
+    @Override
+    public Spliterator<SelectResultRow> spliterator() {
+        return new RowRangeSpliterator(new IntFunction<SelectResultRow>() {
+            @Override
+            public SelectResultRow apply(int row) {
+                return new EncodedRow(row);
+            }
+        }, 0, size);
+    }
+
+    /**
+     * A row decodes its values from the dictionary as they are read
+     */
+    private final class EncodedRow implements SelectResultRow {
+        private final int offset;
+
+        private EncodedRow(int row) {
+            this.offset = row * head.size();
+        }
+
+        @Override
+        public SparqlResource get(String variable) {
+            final int index = head.indexOf(variable);
+            if (index == -1) {
+                return null;
+            }
+            return get(index);
+        }
+
+        @Override
+        public SparqlResource get(int index) {
+            if (index < 0 || index >= head.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Variables: " + head.size());
+            }
+            final int id = ids[offset + index];
+            return (id == UNBOUND) ? null : dictionary.decode(id);
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
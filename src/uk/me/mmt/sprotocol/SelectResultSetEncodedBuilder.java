@@ -0,0 +1,83 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ResultHandler which encodes the rows it is given with a TermDictionary,
+ * and builds a SelectResultSetEncoded from them
+ */
+final class SelectResultSetEncodedBuilder implements ResultHandler {
+
+    private final TermDictionary dictionary;
+    private List<String> head;
+    private int[] ids;
+    private int length;
+    private int size;
+
+    SelectResultSetEncodedBuilder(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void startResult(List<String> head) {
+        this.head = head;
+        this.ids = new int[Math.max(head.size() * 64, 1)];
+        this.length = 0;
+        this.size = 0;
+    }
+
+    @Override
+    public void handleRow(SparqlResource[] bindings) {
+        if (length + bindings.length > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(ids.length * 2, length + bindings.length));
+        }
+        for (int i = 0; i < bindings.length; i++) {
+            ids[length++] = (null == bindings[i]) ? SelectResultSetEncoded.UNBOUND : dictionary.encode(bindings[i]);
+        }
+        size++;
+    }
+
+    @Override
+    public void handleBoolean(boolean result) {
+        // an ASK result is an empty result set
+    }
+
+    @Override
+    public void endResult() {
+        // nothing to do
+    }
+
+    /**
+     * @return the collected results
+     */
+    SelectResultSetEncoded getResultSet() {
+        if (head == null) {
+            throw new IllegalStateException("No result has been handled");
+        }
+        return new SelectResultSetEncoded(head, dictionary, ids, size);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
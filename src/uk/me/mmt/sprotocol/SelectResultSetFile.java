@@ -0,0 +1,112 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * SelectResultSetFile a SelectResultSet streamed from a saved SPARQL results file 
+ * 
+ * The file is memory mapped when the result set is opened, and only its head is
+ * parsed then. Each iterator parses the rows again as it goes, straight from the
+ * mapped file, so no more than the current row is held on the heap. Iterators
+ * which are not run to the end should be closed, see SparqlResultFiles.
+ */
+final class SelectResultSetFile implements SelectResultSet {
+
+    private final Path file;
+    private final String contentType;
+    private final ResultSchema schema;
+    private final MappedByteBuffer[] segments;
+    private final SelectResultHead head;
+
+    /**
+     * @param contentType the SPARQL results mime-type of the file
+     * @param schema hints of the variables, may be 'null'
+     * @throws SprotocolException if the format is not supported, or the head can not be parsed
+     * @throws IOException if the file can not be mapped
+     */
+    SelectResultSetFile(Path file, String contentType, ResultSchema schema) throws SprotocolException, IOException {
+        this.file = file;
+        this.contentType = contentType;
+        this.schema = schema;
+        this.segments = MappedFileReader.map(file);
+
+        final SparqlResultsParser parser = createParser();
+        try {
+            if (parser.isBooleanResult()) {
+                throw new SprotocolException("The file " + file + " holds the result of an ASK query", null);
+            }
+            this.head = parser.getHead();
+        } finally {
+            parser.close();
+        }
+    }
+
+    private SparqlResultsParser createParser() throws SprotocolException, IOException {
+        final SparqlResultsParser parser = SparqlResultsParser.create(contentType, new MappedFileReader(segments), null, false, Integer.MAX_VALUE);
+        parser.setSchema(schema);
+        return parser;
+    }
+
+    @Override
+    public List<String> getHead() {
+        return head;
+    }
+
+    @Override
+    public int indexOf(String variable) {
+        return head.indexOf(variable);
+    }
+
+    /**
+     * @return the file the rows are parsed from
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return an iterator parsing the file from its start, which is also Closeable
+     */
+    @Override
+    public Iterator<SelectResultRow> iterator() {
+        try {
+            return new SelectResultRowIterator(createParser());
+        } catch (final IOException e) {
+            throw new SprotocolException("IOException caught by sprotocol", e);
+        }
+    }
+
+    @Override
+    public Spliterator<SelectResultRow> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
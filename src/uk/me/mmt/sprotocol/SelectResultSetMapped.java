@@ -0,0 +1,227 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.IntFunction;
+
+/**
+ * SelectResultSetMapped an immutable implementation of SelectResultSet, whose rows are 
+ * in a temporary file, spilled there when the results were too large to be kept on the heap
+ * 
+ * The file holds the rows in the binary encoding of RowEncoding, and is memory mapped, 
+ * so the rows are read by the operating system as they are iterated over and can be evicted
+ * again under memory pressure. Only the index of where each row starts is kept on the heap. 
+ * The values of a row are decoded each time they are read.
+ * 
+ * Close the result set to delete its file, its rows can then no longer be read.
+ */
+public final class SelectResultSetMapped implements SelectResultSet, Closeable {
+
+    // the most bytes mapped by one buffer, rows are never split across buffers
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final SelectResultHead head;
+    private final RowEncoding encoding;
+    private final Path file;
+    private final long[] rowOffsets;
+    private final int size;
+    // the first row and the offset in the file of each mapped buffer
+    private final int[] segmentFirstRows;
+    private final long[] segmentStarts;
+    private volatile MappedByteBuffer[] segments;
+
+    /**
+     * @param file the file holding the rows, deleted by close()
+     * @param rowOffsets the offset in the file of each row, at least size of them
+     * @param length the length of the rows in the file
+     * @throws IOException if the file can not be mapped
+     */
+    SelectResultSetMapped(List<String> head, RowEncoding encoding, Path file, long[] rowOffsets, int size, long length) throws IOException {
+        this.head = SelectResultHead.valueOf(head);
+        this.encoding = encoding;
+        this.file = file;
+        this.rowOffsets = (rowOffsets.length == size) ? rowOffsets : Arrays.copyOf(rowOffsets, size);
+        this.size = size;
+
+        final List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>();
+        final List<Integer> firstRows = new ArrayList<Integer>();
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            int first = 0;
+            while (first < size) {
+                final long start = this.rowOffsets[first];
+                int next = first + 1;
+                while (next < size && rowEnd(next, length) - start <= SEGMENT_SIZE) {
+                    next++;
+                }
+                buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, start, rowEnd(next - 1, length) - start));
+                firstRows.add(Integer.valueOf(first));
+                first = next;
+            }
+        } finally {
+            channel.close();
+        }
+
+        this.segments = buffers.toArray(new MappedByteBuffer[buffers.size()]);
+        this.segmentFirstRows = new int[firstRows.size()];
+        this.segmentStarts = new long[firstRows.size()];
+        for (int i = 0; i < this.segmentFirstRows.length; i++) {
+            this.segmentFirstRows[i] = firstRows.get(i).intValue();
+            this.segmentStarts[i] = this.rowOffsets[this.segmentFirstRows[i]];
+        }
+    }
+
+    private long rowEnd(int row, long length) {
+        return (row + 1 < this.size) ? this.rowOffsets[row + 1] : length;
+    }
+
+    @Override
+    public List<String> getHead() {
+        return head;
+    }
+
+    @Override
+    public int indexOf(String variable) {
+        return head.indexOf(variable);
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the temporary file holding the rows
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public Iterator<SelectResultRow> iterator() {
+        return new Iterator<SelectResultRow>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public SelectResultRow next() {
+                if (row >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new MappedRow(row++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return a Spliterator which splits by row number, for parallel streams
+     */
+    @Override
+    public Spliterator<SelectResultRow> spliterator() {
+        return new RowRangeSpliterator(new IntFunction<SelectResultRow>() {
+            @Override
+            public SelectResultRow apply(int row) {
+                return new MappedRow(row);
+            }
+        }, 0, size);
+    }
+
+    /**
+     * Delete the file holding the rows. The mapped buffers are released by the garbage
+     * collector, until then a file which can not be deleted is deleted on exit.
+     */
+    @Override
+    public void close() {
+        if (this.segments == null) {
+            return;
+        }
+        this.segments = null;
+        try {
+            Files.deleteIfExists(this.file);
+        } catch (final IOException e) {
+            // some platforms do not delete files which are still mapped
+            this.file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * A row decodes its values from the mapped file as they are read
+     */
+    private final class MappedRow implements SelectResultRow {
+        private final int row;
+
+        private MappedRow(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public SparqlResource get(String variable) {
+            final int index = head.indexOf(variable);
+            if (index == -1) {
+                return null;
+            }
+            return get(index);
+        }
+
+        @Override
+        public SparqlResource get(int index) {
+            if (index < 0 || index >= head.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Variables: " + head.size());
+            }
+            final MappedByteBuffer[] buffers = segments;
+            if (buffers == null) {
+                throw new IllegalStateException("The results have been closed, their rows can no longer be read");
+            }
+            int segment = Arrays.binarySearch(segmentFirstRows, row);
+            if (segment < 0) {
+                segment = -segment - 2;
+            }
+            return encoding.decode(buffers[segment], (int) (rowOffsets[row] - segmentStarts[segment]), index);
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,173 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.IntFunction;
+
+/**
+ * SelectResultSetOffHeap an immutable implementation of SelectResultSet, whose rows are
+ * kept in direct ByteBuffers, outside of the Java heap
+ * 
+ * The rows are held in the binary encoding of RowEncoding, in blocks of direct memory, so
+ * a result set kept for a long time is a handful of objects for the garbage collector to trace,
+ * rather than several per term. Only the index of where each row starts is kept on the heap.
+ * The terms of a row are created each time they are read, hold on to them rather than
+ * reading them again.
+ * 
+ * The direct memory is released when the result set is garbage collected, it is bounded 
+ * by -XX:MaxDirectMemorySize.
+ */
+public final class SelectResultSetOffHeap implements SelectResultSet {
+
+    private final SelectResultHead head;
+    private final RowEncoding encoding;
+    private final ByteBuffer[] blocks;
+    // the first row of each block, and the start of each row in its block
+    private final int[] blockFirstRows;
+    private final int[] rowStarts;
+    private final int size;
+
+    /**
+     * @param blocks the direct buffers holding the rows
+     * @param blockFirstRows the first row of each block
+     * @param rowStarts the index of each row in its block, at least size of them
+     */
+    SelectResultSetOffHeap(List<String> head, RowEncoding encoding, ByteBuffer[] blocks, int[] blockFirstRows, int[] rowStarts, int size) {
+        if (null == head || null == encoding || null == blocks) {
+            throw new IllegalArgumentException("Neither the head, encoding or blocks of the SPARQL-RESULTS can be 'null'");
+        }
+        this.head = SelectResultHead.valueOf(head);
+        this.encoding = encoding;
+        this.blocks = blocks;
+        this.blockFirstRows = blockFirstRows;
+        this.rowStarts = (rowStarts.length == size) ? rowStarts : Arrays.copyOf(rowStarts, size);
+        this.size = size;
+    }
+
+    @Override
+    public List<String> getHead() {
+        return head;
+    }
+
+    @Override
+    public int indexOf(String variable) {
+        return head.indexOf(variable);
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of direct memory taken by the rows
+     */
+    public long getOffHeapSize() {
+        long bytes = 0;
+        for (final ByteBuffer block : blocks) {
+            bytes += block.capacity();
+        }
+        return bytes;
+    }
+
+    @Override
+    public Iterator<SelectResultRow> iterator() {
+        return new Iterator<SelectResultRow>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public SelectResultRow next() {
+                if (row >= size) {
+                    throw new NoSuchElementException();
+                }
+                return new OffHeapRow(row++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return a Spliterator which splits by row number, for parallel streams
+     */
+    @Override
+    public Spliterator<SelectResultRow> spliterator() {
+        return new RowRangeSpliterator(new IntFunction<SelectResultRow>() {
+            @Override
+            public SelectResultRow apply(int row) {
+                return new OffHeapRow(row);
+            }
+        }, 0, size);
+    }
+
+    /**
+     * A row decodes its values from the direct memory as they are read
+     */
+    private final class OffHeapRow implements SelectResultRow {
+        private final ByteBuffer block;
+        private final int start;
+
+        private OffHeapRow(int row) {
+            int index = Arrays.binarySearch(blockFirstRows, row);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            this.block = blocks[index];
+            this.start = rowStarts[row];
+        }
+
+        @Override
+        public SparqlResource get(String variable) {
+            final int index = head.indexOf(variable);
+            if (index == -1) {
+                return null;
+            }
+            return get(index);
+        }
+
+        @Override
+        public SparqlResource get(int index) {
+            if (index < 0 || index >= head.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Variables: " + head.size());
+            }
+            return encoding.decode(block, start, index);
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
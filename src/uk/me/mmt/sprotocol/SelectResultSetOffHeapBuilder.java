@@ -0,0 +1,103 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ResultHandler which encodes the rows it is given with a RowEncoding into blocks
+ * of direct memory, and builds a SelectResultSetOffHeap from them
+ * 
+ * Rows are never split across blocks, a row larger than a block gets a block of its own.
+ */
+final class SelectResultSetOffHeapBuilder implements ResultHandler {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final RowEncoding encoding = new RowEncoding();
+    private final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+    private List<String> head;
+    private ByteBuffer block;
+    private int[] blockFirstRows;
+    private int[] rowStarts;
+    private int size;
+
+    @Override
+    public void startResult(List<String> head) {
+        this.head = head;
+        this.blockFirstRows = new int[16];
+        this.rowStarts = new int[1024];
+        this.size = 0;
+    }
+
+    @Override
+    public void handleRow(SparqlResource[] bindings) {
+        final ByteBuffer row = encoding.encode(bindings);
+        if (block == null || row.remaining() > block.remaining()) {
+            block = ByteBuffer.allocateDirect(Math.max(BLOCK_SIZE, row.remaining()));
+            if (blocks.size() == blockFirstRows.length) {
+                blockFirstRows = Arrays.copyOf(blockFirstRows, blocks.size() * 2);
+            }
+            blockFirstRows[blocks.size()] = size;
+            blocks.add(block);
+        }
+        if (size == rowStarts.length) {
+            rowStarts = Arrays.copyOf(rowStarts, size * 2);
+        }
+        rowStarts[size++] = block.position();
+        block.put(row);
+    }
+
+    @Override
+    public void handleBoolean(boolean result) {
+        // an ASK result is an empty result set
+    }
+
+    @Override
+    public void endResult() {
+        // nothing to do
+    }
+
+    /**
+     * @return the collected results
+     */
+    SelectResultSetOffHeap getResultSet() {
+        if (head == null) {
+            throw new IllegalStateException("No result has been handled");
+        }
+        if (block != null && block.position() < block.capacity() / 2) {
+            // the last block is copied to one of its size, rather than keep its unused memory for as long as the results
+            final ByteBuffer last = ByteBuffer.allocateDirect(block.position());
+            block.flip();
+            last.put(block);
+            blocks.set(blocks.size() - 1, last);
+            block = last;
+        }
+        return new SelectResultSetOffHeap(head, encoding, blocks.toArray(new ByteBuffer[blocks.size()]),
+                Arrays.copyOf(blockFirstRows, blocks.size()), rowStarts, size);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
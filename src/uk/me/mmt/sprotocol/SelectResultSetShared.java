@@ -0,0 +1,292 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * SelectResultSetShared a result set of TSV results, parsed on demand and shared by many threads
+ * 
+ * The rows are split into chunks at line boundaries, which are only parsed when a thread
+ * first iterates into them. Each chunk has a slot, which the first thread to get to it claims 
+ * with a compare and set, parses the chunk, and publishes its rows. Other threads then use 
+ * those rows, or wait for that chunk only while it is being parsed, so no chunk is parsed twice
+ * and there is no lock over the whole result set. Parallel streams parse their chunks in parallel.
+ * 
+ * The chars of the TSV are kept for as long as the result set, as chunks are parsed from them.
+ */
+public final class SelectResultSetShared implements SelectResultSet {
+
+    // chars per chunk, extended to the end of its last line
+    private static final int CHUNK_SIZE = 1 << 15;
+
+    private final char[] buf;
+    private final int dataStart;
+    private final SelectResultHead variables;
+    private final TermInterner interner;
+    private final boolean lazyLiterals;
+    private final int largeLiteralThreshold;
+    private final ResultSchema schema;
+    private final AtomicReferenceArray<FutureTask<SelectResultRow[]>> chunks;
+
+    /**
+     * Create a shareable result set of TSV results.
+     *
+     * @param tsv Raw TSV string as returned by SPARQL server
+     * @throws SprotcolException if TSV header line cannot be parsed
+     */
+    public SelectResultSetShared(String tsv) throws SprotocolException, IOException {
+        this(tsv, null, false, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Create a shareable result set of TSV results, see SelectResultSetTsv for the options.
+     *
+     * @param tsv Raw TSV string as returned by SPARQL server
+     * @param interner Used to create the IRIs and Literals of the results, may be null
+     * @param lazyLiterals Whether the values of literals are decoded when first asked for
+     * @param largeLiteralThreshold Length in chars above which literal values are large
+     * @param schema Hints of what the variables are bound to, may be null
+     * @throws SprotcolException if TSV header line cannot be parsed
+     */
+    public SelectResultSetShared(String tsv, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold, ResultSchema schema) throws SprotocolException, IOException {
+        final int headerEnd = tsv.indexOf('\n');
+        final SparqlResultsTsvParser headerParser = new SparqlResultsTsvParser(new StringReader(headerEnd == -1 ? tsv : tsv.substring(0, headerEnd + 1)));
+        try {
+            this.variables = headerParser.getHead();
+        } finally {
+            headerParser.close();
+        }
+
+        this.buf = tsv.toCharArray();
+        this.dataStart = (headerEnd == -1) ? this.buf.length : headerEnd + 1;
+        this.interner = interner;
+        this.lazyLiterals = lazyLiterals;
+        this.largeLiteralThreshold = largeLiteralThreshold;
+        this.schema = schema;
+        this.chunks = new AtomicReferenceArray<FutureTask<SelectResultRow[]>>((this.buf.length - this.dataStart + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    @Override
+    public List<String> getHead() {
+        return this.variables;
+    }
+
+    @Override
+    public int indexOf(String variable) {
+        return this.variables.indexOf(variable);
+    }
+
+    @Override
+    public Iterator<SelectResultRow> iterator() {
+        return new SharedRowIterator();
+    }
+
+    /**
+     * @return a Spliterator which splits by chunks, so the chunks not yet parsed
+     * are parsed by the threads of a parallel stream
+     */
+    @Override
+    public Spliterator<SelectResultRow> spliterator() {
+        return new ChunkSpliterator(null, 0, 0, this.chunks.length());
+    }
+
+    /**
+     * The rows of a chunk, parsing them if no other thread has claimed the chunk,
+     * or waiting for the thread which has
+     *
+     * @throws SprotocolException if the rows of the chunk can not be parsed
+     */
+    private SelectResultRow[] chunk(final int index) throws SprotocolException {
+        FutureTask<SelectResultRow[]> task = this.chunks.get(index);
+        if (task == null) {
+            final FutureTask<SelectResultRow[]> parse = new FutureTask<SelectResultRow[]>(new Callable<SelectResultRow[]>() {
+                @Override
+                public SelectResultRow[] call() {
+                    return parseChunk(index);
+                }
+            });
+            if (this.chunks.compareAndSet(index, null, parse)) {
+                parse.run();
+                task = parse;
+            } else {
+                task = this.chunks.get(index);
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SprotocolException("Interrupted while waiting for the results parsed by another thread", e);
+        } catch (final ExecutionException e) {
+            // the same failure is reported to each thread which gets to the chunk
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SprotocolException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private SelectResultRow[] parseChunk(int index) {
+        final SparqlResultsTsvParser parser = new SparqlResultsTsvParser(this.variables, this.buf, lineStart(this.dataStart + index * CHUNK_SIZE), lineStart(this.dataStart + (index + 1) * CHUNK_SIZE));
+        parser.setTermInterner(this.interner);
+        parser.setLazyLiterals(this.lazyLiterals);
+        parser.setLargeLiteralThreshold(this.largeLiteralThreshold);
+        parser.setSchema(this.schema);
+
+        final List<SelectResultRow> rows = new ArrayList<SelectResultRow>();
+        try {
+            SparqlResource[] bindings = new SparqlResource[this.variables.size()];
+            while (parser.nextRow(bindings)) {
+                rows.add(new SelectResultRowSimple(this.variables, bindings));
+                bindings = new SparqlResource[this.variables.size()];
+            }
+        } catch (final IOException e) {
+            // should be impossible for IOException to occur when reading from a buffer
+            throw new SprotocolException("IOException caught by sprotocol", e);
+        }
+        return rows.toArray(new SelectResultRow[rows.size()]);
+    }
+
+    /**
+     * @return the start of the first line at or after a position, so that
+     * consecutive chunks meet at line boundaries
+     */
+    private int lineStart(int position) {
+        if (position <= this.dataStart) {
+            return this.dataStart;
+        }
+        return LineChunks.lineStart(this.buf, position, this.buf.length);
+    }
+
+    /**
+     * Iterator over the rows, chunk by chunk.
+     */
+    private class SharedRowIterator implements Iterator<SelectResultRow> {
+        private SelectResultRow[] rows = new SelectResultRow[0];
+        private int pos;
+        private int nextChunk;
+
+        @Override
+        public boolean hasNext() {
+            while (this.pos == this.rows.length) {
+                if (this.nextChunk == chunks.length()) {
+                    return false;
+                }
+                this.rows = chunk(this.nextChunk++);
+                this.pos = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public SelectResultRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.rows[this.pos++];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A Spliterator over a range of chunks, splitting off half of the chunks it has not started
+     */
+    private final class ChunkSpliterator implements Spliterator<SelectResultRow> {
+        private SelectResultRow[] rows;
+        private int pos;
+        private int nextChunk;
+        private final int fence;
+
+        /**
+         * @param rows the rows of the chunk started, or 'null'
+         * @param pos the next row of the chunk started
+         * @param nextChunk the first chunk not started
+         * @param fence the chunk after the last
+         */
+        ChunkSpliterator(SelectResultRow[] rows, int pos, int nextChunk, int fence) {
+            this.rows = rows;
+            this.pos = pos;
+            this.nextChunk = nextChunk;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super SelectResultRow> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            while (this.rows == null || this.pos == this.rows.length) {
+                if (this.nextChunk == this.fence) {
+                    return false;
+                }
+                this.rows = chunk(this.nextChunk++);
+                this.pos = 0;
+            }
+            action.accept(this.rows[this.pos++]);
+            return true;
+        }
+
+        @Override
+        public Spliterator<SelectResultRow> trySplit() {
+            final int mid = (this.nextChunk + this.fence) >>> 1;
+            if (mid <= this.nextChunk) {
+                return null;
+            }
+            // the prefix keeps the rest of the chunk started
+            final Spliterator<SelectResultRow> prefix = new ChunkSpliterator(this.rows, this.pos, this.nextChunk, mid);
+            this.rows = null;
+            this.pos = 0;
+            this.nextChunk = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            // the number of rows is only known once the chunks are parsed
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | IMMUTABLE | NONNULL;
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -23,32 +23,46 @@ package uk.me.mmt.sprotocol;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
 
 /**
  * SelectResultSetSimple an immutable class implementing SelectResultSet is meant to mimic the Sparql-Results XML format 
  */
 public final class SelectResultSetSimple implements SelectResultSet {
     
-    private final List<String> head;
+    private final SelectResultHead head;
     private final List<SelectResultRow> results;
 
     public SelectResultSetSimple(List<String> head, List<SelectResultRow> results) {
         if (null == head || null == results) {
             throw new IllegalArgumentException("Neither the head or the result of the SPARQL-RESULTS can be 'null'");
         }
-        this.head = Collections.unmodifiableList(head);
+        this.head = SelectResultHead.valueOf(head);
         this.results = Collections.unmodifiableList(results);
     }
 
     public List<String> getHead() {
         return head;
     }
+
+    @Override
+    public int indexOf(String variable) {
+        return head.indexOf(variable);
+    }
     
     @Override
     public Iterator<SelectResultRow> iterator() {
         return results.iterator();
     }
 
+    /**
+     * @return the Spliterator of the list of rows, which is SIZED and ORDERED
+     */
+    @Override
+    public Spliterator<SelectResultRow> spliterator() {
+        return results.spliterator();
+    }
+
 }
 
 /* vi:set ts=8 sts=4 sw=4 et: */
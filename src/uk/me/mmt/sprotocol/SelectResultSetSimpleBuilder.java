@@ -0,0 +1,66 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ResultHandler which collects the rows it is given into a SelectResultSetSimple
+ */
+final class SelectResultSetSimpleBuilder implements ResultHandler {
+
+    private SelectResultHead head;
+    private final List<SelectResultRow> results = new ArrayList<SelectResultRow>();
+
+    @Override
+    public void startResult(List<String> head) {
+        this.head = SelectResultHead.valueOf(head);
+    }
+
+    @Override
+    public void handleRow(SparqlResource[] bindings) {
+        results.add(new SelectResultRowSimple(head, bindings.clone()));
+    }
+
+    @Override
+    public void handleBoolean(boolean result) {
+        // an ASK result is an empty result set
+    }
+
+    @Override
+    public void endResult() {
+        // nothing to do
+    }
+
+    /**
+     * @return the collected results
+     */
+    SelectResultSet getResultSet() {
+        if (head == null) {
+            throw new IllegalStateException("No result has been handled");
+        }
+        return new SelectResultSetSimple(head, results);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
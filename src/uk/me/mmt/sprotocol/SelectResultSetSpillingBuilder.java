@@ -0,0 +1,209 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ResultHandler which collects the rows it is given on the heap, until they take more
+ * than a budget, then spills them to a temporary file and builds a SelectResultSetMapped
+ * 
+ * The heap taken by the rows is estimated from the length of their values. Once spilled,
+ * the rows are encoded with a RowEncoding and written through a buffer, so no more heap 
+ * is taken than the index of where each row starts.
+ */
+final class SelectResultSetSpillingBuilder implements ResultHandler {
+
+    // rough bytes of heap per term besides its chars, for the term, its String and their headers
+    private static final int TERM_OVERHEAD = 64;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final long heapBudget;
+    private final RowEncoding encoding = new RowEncoding();
+    private SelectResultHead head;
+    private final List<SelectResultRow> results = new ArrayList<SelectResultRow>();
+    private long heapUsed;
+
+    // once spilled, the file of the rows and where each one starts
+    private Path file;
+    private FileChannel channel;
+    private ByteBuffer out;
+    private long[] rowOffsets;
+    private int size;
+    private long length;
+
+    /**
+     * @param heapBudget the bytes of heap the rows may take before they are spilled
+     */
+    SelectResultSetSpillingBuilder(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    @Override
+    public void startResult(List<String> head) {
+        this.head = SelectResultHead.valueOf(head);
+    }
+
+    @Override
+    public void handleRow(SparqlResource[] bindings) throws SprotocolException {
+        if (file == null) {
+            heapUsed += heapSize(bindings);
+            if (heapUsed <= heapBudget) {
+                results.add(new SelectResultRowSimple(head, bindings.clone()));
+                return;
+            }
+            spill();
+        }
+        write(bindings);
+    }
+
+    @Override
+    public void handleBoolean(boolean result) {
+        // an ASK result is an empty result set
+    }
+
+    @Override
+    public void endResult() throws SprotocolException {
+        if (file != null) {
+            try {
+                flush();
+                channel.close();
+            } catch (final IOException e) {
+                discard();
+                throw new SprotocolException("Unable to spill the results to " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @return the collected results, a SelectResultSetMapped if they were spilled
+     */
+    SelectResultSet getResultSet() throws SprotocolException {
+        if (head == null) {
+            throw new IllegalStateException("No result has been handled");
+        }
+        if (file == null) {
+            return new SelectResultSetSimple(head, results);
+        }
+        try {
+            return new SelectResultSetMapped(head, encoding, file, rowOffsets, size, length);
+        } catch (final IOException e) {
+            discard();
+            throw new SprotocolException("Unable to map the results spilled to " + file, e);
+        }
+    }
+
+    /**
+     * Delete the file of the rows spilled so far, when the results will not be built
+     */
+    void discard() {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private static long heapSize(SparqlResource[] bindings) {
+        long bytes = 0;
+        for (final SparqlResource term : bindings) {
+            if (term != null) {
+                final int chars = (term instanceof Literal) ? ((Literal) term).getValueLength() : term.getValue().length();
+                bytes += TERM_OVERHEAD + 2L * chars;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the rows collected so far to a new temporary file, which then gets the next rows
+     */
+    private void spill() throws SprotocolException {
+        try {
+            file = Files.createTempFile("sprotocol-results", ".rows");
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            discard();
+            throw new SprotocolException("Unable to create a file to spill the results to", e);
+        }
+        out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        rowOffsets = new long[Math.max(results.size() * 2, 1024)];
+
+        final SparqlResource[] bindings = new SparqlResource[head.size()];
+        for (final SelectResultRow row : results) {
+            for (int i = 0; i < bindings.length; i++) {
+                bindings[i] = row.get(i);
+            }
+            write(bindings);
+        }
+        results.clear();
+    }
+
+    private void write(SparqlResource[] bindings) throws SprotocolException {
+        final ByteBuffer row = encoding.encode(bindings);
+        if (size == rowOffsets.length) {
+            rowOffsets = Arrays.copyOf(rowOffsets, size * 2);
+        }
+        rowOffsets[size++] = length;
+        length += row.remaining();
+
+        try {
+            if (row.remaining() > out.remaining()) {
+                flush();
+            }
+            if (row.remaining() > out.capacity()) {
+                while (row.hasRemaining()) {
+                    channel.write(row);
+                }
+            } else {
+                out.put(row);
+            }
+        } catch (final IOException e) {
+            discard();
+            throw new SprotocolException("Unable to spill the results to " + file, e);
+        }
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -24,6 +24,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URL;
@@ -53,11 +54,73 @@ public final class SparqlProtocolClientUtils {
      * 
      */
     protected static SparqlResponse sparqlQueryAccept(final String query, final RequestType requestType, final String acceptHeader, final String endpoint, final boolean checkMimeType, int timeout) throws SprotocolException, IOException {     
+        return sparqlQueryAccept(query, requestType, acceptHeader, endpoint, checkMimeType, timeout, ResultLimits.NONE);
+    }
+
+    /**
+     * Send a SPARQL Request via POST configurable acceptHeader returns a String,
+     * aborting the request if its body is larger than the limits allow
+     * 
+     * @throws ResultLimitException if the body goes over the limit on bytes
+     */
+    static SparqlResponse sparqlQueryAccept(final String query, final RequestType requestType, final String acceptHeader, final String endpoint, final boolean checkMimeType, int timeout, ResultLimits limits) throws SprotocolException, IOException {     
 
         final StringBuilder output = new StringBuilder();
+        final SparqlStreamingResponse response = sparqlQueryStream(query, requestType, acceptHeader, endpoint, checkMimeType, timeout, limits);
+
+        // Get the response
+        BufferedReader rd = null;
+        try {
+            rd = new BufferedReader(response.getReader());
+            String line;
+
+            while ((line = rd.readLine()) != null) {
+                // Process line...
+                output.append(line);
+                output.append("\n");
+            }
+        } catch (SocketTimeoutException e) {    
+            throw new SprotocolException("SocketTimeoutException caught", e);
+        } catch (IOException e) {
+            throw new IOException("IOException caught by sprotocol", e);
+        } finally {
+            if (rd != null) {
+                rd.close();
+            } else {
+                response.close();
+            }
+        }
+
+        return new SparqlResponse(output.toString(), response.getContentType(), response.getCharset(), response.getRawContentType(), response.getLimiter());
+    }
+
+    /**
+     * Send a SPARQL Request via POST configurable acceptHeader, and leave the response body
+     * on the connection, to be parsed as it is read rather than held as a String
+     * 
+     * @returns SparqlStreamingResponse which must be closed once read
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException are also thrown 
+     */
+    static SparqlStreamingResponse sparqlQueryStream(final String query, final RequestType requestType, final String acceptHeader, final String endpoint, final boolean checkMimeType, int timeout) throws SprotocolException, IOException {
+        return sparqlQueryStream(query, requestType, acceptHeader, endpoint, checkMimeType, timeout, ResultLimits.NONE);
+    }
+
+    /**
+     * Send a SPARQL Request via POST configurable acceptHeader, and leave the response body
+     * on the connection, with a ResultLimiter which counts the bytes read from it, and 
+     * aborts the connection when the body, or its rows once given to the parsers, go over the limits
+     * 
+     * @returns SparqlStreamingResponse which must be closed once read
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException are also thrown 
+     */
+    static SparqlStreamingResponse sparqlQueryStream(final String query, final RequestType requestType, final String acceptHeader, final String endpoint, final boolean checkMimeType, int timeout, ResultLimits limits) throws SprotocolException, IOException {
         final String contentType;
         final String charset;
         final String rawContentType;
+        final Reader reader;
+        final ResultLimiter limiter;
 
         try {
             //Identify the correct cgi-parameter name
@@ -115,20 +178,12 @@ public final class SparqlProtocolClientUtils {
             }
 
             // Get the response
-            BufferedReader rd = null;
-            try {
-                rd = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
-                String line;
-
-                while ((line = rd.readLine()) != null) {
-                    // Process line...
-                    output.append(line);
-                    output.append("\n");
-                }
-            } finally {
-                if (rd != null) {
-                    rd.close();
-                }
+            if (limits.isUnlimited()) {
+                limiter = null;
+                reader = new InputStreamReader(conn.getInputStream(), "UTF-8");
+            } else {
+                limiter = new ResultLimiter(limits, conn);
+                reader = new InputStreamReader(limiter.limit(conn.getInputStream()), "UTF-8");
             }
         } catch (SocketTimeoutException e) {    
             throw new SprotocolException("SocketTimeoutException caught", e);
@@ -138,7 +193,7 @@ public final class SparqlProtocolClientUtils {
             throw new SprotocolException("Error when making HTTP sparql protocol call to the SPARQL endpoint", e);
         }
 
-        return new SparqlResponse(output.toString(), contentType, charset, rawContentType);
+        return new SparqlStreamingResponse(reader, contentType, charset, rawContentType, limiter);
     }
 
     /**
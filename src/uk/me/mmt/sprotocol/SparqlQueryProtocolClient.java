@@ -22,18 +22,17 @@ package uk.me.mmt.sprotocol;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A simple sparql protocol client, sparql query in, sparql-results out, zero dependencies
@@ -45,8 +44,31 @@ public class SparqlQueryProtocolClient {
         this.sparqlEndpoint = sEp;
     }
 
+    /**
+     * A client of the same endpoint with the same settings, which are copied
+     */
+    private SparqlQueryProtocolClient(SparqlQueryProtocolClient client) {
+        this.sparqlEndpoint = client.sparqlEndpoint;
+        this.timeout = client.timeout;
+        this.acceptHeader = client.acceptHeader;
+        this.acceptHeaderSet = client.acceptHeaderSet;
+        this.termInterner = client.termInterner;
+        this.lazyLiterals = client.lazyLiterals;
+        this.largeLiteralThreshold = client.largeLiteralThreshold;
+        this.resultHeapBudget = client.resultHeapBudget;
+        this.spoolParallelGraphs = client.spoolParallelGraphs;
+        this.resultLimits = client.resultLimits;
+    }
+
     private int timeout = SprotocolConstants.TIMEOUT;
     private String acceptHeader = SprotocolConstants.ACCEPT_HEADER;
+    private boolean acceptHeaderSet = false;
+    private TermInterner termInterner = null;
+    private boolean lazyLiterals = false;
+    private int largeLiteralThreshold = Integer.MAX_VALUE;
+    private long resultHeapBudget = Long.MAX_VALUE;
+    private boolean spoolParallelGraphs = false;
+    private ResultLimits resultLimits = ResultLimits.NONE;
 
     /**
      * This function will check the mime type of a SPARQL HTTP request to check
@@ -55,8 +77,8 @@ public class SparqlQueryProtocolClient {
      * @throws SprotocolException
      */
     public AnyResult genericQuery(String query) throws SprotocolException, IOException {
-
-        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, this.acceptHeader, this.sparqlEndpoint, true, getTimeout());
+        final QueryForm form = QueryForm.of(query);
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(form), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
         final String contentType = response.getContentType();
 
         // check if data returned is actual RDF, as opposed to SPARQL results
@@ -69,32 +91,63 @@ public class SparqlQueryProtocolClient {
             throw new SprotocolException("genericQuery couldn't guess the type of result returned"+response.getContentType(), null);
         }
 
-        // check query string for ASK, not possible to determine from results with some formats
-        if (isAskQuery(query)) {
+        // check the query form for ASK, not possible to determine from results with some formats
+        if (form == QueryForm.ASK) {
             final Pair<Boolean,Boolean> askResponse = processAskResponse(response);
             if (askResponse.getFirst().booleanValue()) {
                 return new AnyResult(askResponse.getSecond().booleanValue());
             } else {
                 // should only be called if we guessed wrong about it being an ASK
-                return new AnyResult(parseSparqlResponse(response));
+                return new AnyResult(parseSparqlResponse(response, (ResultSchema) null));
             }
         } else {
             // SELECT query assumed
-            return new AnyResult(parseSparqlResponse(response));
+            return new AnyResult(parseSparqlResponse(response, (ResultSchema) null));
         }
     }
 
-    // TODO: could probably be a more generic getQueryType method instead?
     /**
-     * Check whether a SPARQL query is an ASK query or not.
-     * @param query A SPARQL query
-     * @return true if query looks like an ASK query, false otherwise
+     * Send a SPARQL SELECT or ASK Query and pass the results to a ResultHandler
+     * as they are decoded, without building a SelectResultSet
+     *
+     * @param query SPARQL SELECT or ASK
+     * @param handler called back with the head and then each row, or the boolean of an ASK
+     * @throws SprotocolException if RDF is returned, on a parse error, or if thrown by the handler
+     * @throws IOException
      */
-    private boolean isAskQuery(String query) {
-        final Pattern askRegex = Pattern.compile("\\bASK\\s*\\{", Pattern.CASE_INSENSITIVE);
-        final Matcher askMatcher = askRegex.matcher(query);
+    public void genericQuery(String query, ResultHandler handler) throws SprotocolException, IOException {
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(QueryForm.of(query)), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+        final String contentType = response.getContentType();
 
-        return askMatcher.find();
+        if (!SprotocolConstants.SPARQL_RESULTS_MIME_TYPES.contains(contentType)) {
+            throw new SprotocolException("Only SPARQL results can be passed to a ResultHandler, got " + contentType, null);
+        }
+
+        parseSparqlResponse(response, handler);
+    }
+
+    /**
+     * The Accept header for a query of the given form, listing only the formats this
+     * client parses for it, unless a header of its own has been set with setAcceptHeader
+     *
+     * @param form the form of the query
+     * @return Accept header to make the request with
+     */
+    private String acceptHeaderFor(QueryForm form) {
+        if (this.acceptHeaderSet) {
+            return this.acceptHeader;
+        }
+        switch (form) {
+            case SELECT:
+                return SprotocolConstants.SELECT_ACCEPT_HEADER;
+            case ASK:
+                return SprotocolConstants.ASK_ACCEPT_HEADER;
+            case CONSTRUCT:
+            case DESCRIBE:
+                return SprotocolConstants.GRAPH_ACCEPT_HEADER;
+            default:
+                return this.acceptHeader;
+        }
     }
 
     /**
@@ -106,8 +159,255 @@ public class SparqlQueryProtocolClient {
      * @throws IOException are also thrown when parsing the XML
      */
     public SelectResultSet executeSelect(String query) throws SprotocolException, IOException {
-        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, this.acceptHeader, this.sparqlEndpoint, true, getTimeout());
-        return parseSparqlResponse(response);
+        if (this.resultHeapBudget != Long.MAX_VALUE) {
+            return executeSelectSpilling(query, null);
+        }
+        if (!this.resultLimits.isUnlimited()) {
+            return executeSelectLimited(query, null);
+        }
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(QueryForm.SELECT), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+        return parseSparqlResponse(response, (ResultSchema) null);
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and get back a SelectResultSet, whose terms are parsed
+     * the way a schema hints the variables are bound, see ResultSchema
+     *
+     * @param query SPARQL SELECT
+     * @param schema hints of what the variables of the query are bound to
+     * @return A SelectResultSet with the results of the SELECT Query (mimics SPARQL-RESULTS format)
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException are also thrown when parsing the XML
+     */
+    public SelectResultSet executeSelect(String query, ResultSchema schema) throws SprotocolException, IOException {
+        if (this.resultHeapBudget != Long.MAX_VALUE) {
+            return executeSelectSpilling(query, schema);
+        }
+        if (!this.resultLimits.isUnlimited()) {
+            return executeSelectLimited(query, schema);
+        }
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(QueryForm.SELECT), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+        return parseSparqlResponse(response, schema);
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and get back a SelectResultSet which can be shared by
+     * many threads, each row being parsed only once, by whichever thread first gets to it
+     *
+     * TSV results are parsed on demand in chunks, see SelectResultSetShared, other
+     * results are parsed straight away, as are all results when there are ResultLimits,
+     * so the rows are counted while the response is read.
+     *
+     * @param query SPARQL SELECT
+     * @return A thread safe SelectResultSet with the results of the SELECT Query
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException are also thrown when parsing the XML
+     */
+    public SelectResultSet executeSelectShared(String query) throws SprotocolException, IOException {
+        if (!this.resultLimits.isUnlimited()) {
+            return executeSelectLimited(query, null);
+        }
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(QueryForm.SELECT), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+        if (SprotocolConstants.SPARQL_RESULTS_TSV_MIME.equals(response.getContentType())) {
+            return new SelectResultSetShared(response.getData(), this.termInterner, this.lazyLiterals, this.largeLiteralThreshold, null);
+        }
+        return parseSparqlResponse(response, (ResultSchema) null);
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and pass each row to a ResultHandler as it is decoded
+     *
+     * @param query SPARQL SELECT
+     * @param handler called back with the head and then each row of the results
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public void executeSelect(String query, ResultHandler handler) throws SprotocolException, IOException {
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(QueryForm.SELECT), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+        parseSparqlResponse(response, handler);
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and move a cursor over the results, which are parsed
+     * from the response as they are asked for, into a single reused row
+     *
+     * Each row returned by the cursor is only valid until its next call to next(),
+     * see SelectResultCursor.
+     *
+     * @param query SPARQL SELECT
+     * @return SelectResultCursor to close if it is not read to the end
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultCursor executeSelectCursor(String query) throws SprotocolException, IOException {
+        return new SelectResultCursor(openResultsParser(query));
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and move a cursor over the results, whose terms are
+     * parsed the way a schema hints the variables are bound, see ResultSchema
+     *
+     * @param query SPARQL SELECT
+     * @param schema hints of what the variables of the query are bound to
+     * @return SelectResultCursor to close if it is not read to the end
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultCursor executeSelectCursor(String query, ResultSchema schema) throws SprotocolException, IOException {
+        final SparqlResultsParser parser = openResultsParser(query);
+        parser.setSchema(schema);
+        return new SelectResultCursor(parser);
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and stream the results, which are parsed from the
+     * response as they are asked for
+     *
+     * The connection is released once the last row has been read, or when the stream
+     * is closed, so use it in a try-with-resources if it may not be read to the end.
+     * A parallel stream splits off batches of rows as they are parsed.
+     *
+     * @param query SPARQL SELECT
+     * @return Stream of the rows, in order
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public Stream<SelectResultRow> executeSelectStream(String query) throws SprotocolException, IOException {
+        final SelectResultRowIterator rows = new SelectResultRowIterator(openResultsParser(query));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            rows.close();
+                        } catch (final IOException e) {
+                            throw new SprotocolException("IOException caught by sprotocol", e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Publish the results of a SPARQL SELECT Query, read from the response on a
+     * pool of threads kept for blocking reads as subscribers ask for them
+     *
+     * @param query SPARQL SELECT
+     * @return Flow.Publisher which sends the query once for each subscriber
+     */
+    public Flow.Publisher<SelectResultRow> executeSelectPublisher(String query) {
+        return executeSelectPublisher(query, ResultPublisher.defaultExecutor());
+    }
+
+    /**
+     * Publish the results of a SPARQL SELECT Query, read from the response on an
+     * executor as subscribers ask for them
+     *
+     * Reading stops while subscribers have not asked for more rows, without holding a thread.
+     * Errors, including IOExceptions wrapped in SprotocolExceptions, are passed to onError.
+     *
+     * @param query SPARQL SELECT
+     * @param executor runs the tasks reading the response
+     * @return Flow.Publisher which sends the query once for each subscriber
+     */
+    public Flow.Publisher<SelectResultRow> executeSelectPublisher(final String query, Executor executor) {
+        return new ResultPublisher<SelectResultRow>(new ResultPublisher.Opener<SelectResultRow>() {
+            @Override
+            public Iterator<SelectResultRow> open() throws SprotocolException, IOException {
+                return new SelectResultRowIterator(openResultsParser(query));
+            }
+        }, executor);
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and parse the results on all the cores of the common ForkJoinPool
+     *
+     * @param query SPARQL SELECT
+     * @return A SelectResultSet with the results of the SELECT Query, in order
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultSet executeSelectParallel(String query) throws SprotocolException, IOException {
+        return executeSelectParallel(query, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and parse the results in chunks on a ForkJoinPool
+     *
+     * Only line based formats (TSV) can be split, other formats are parsed as executeSelect does.
+     *
+     * @param query SPARQL SELECT
+     * @param pool the ForkJoinPool to parse the results on
+     * @return A SelectResultSet with the results of the SELECT Query, in order
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultSet executeSelectParallel(String query, ForkJoinPool pool) throws SprotocolException, IOException {
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(QueryForm.SELECT), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+
+        if (SprotocolConstants.SPARQL_RESULTS_TSV_MIME.equals(response.getContentType())) {
+            return ParallelTsvParser.parse(response.getData(), this.termInterner, this.lazyLiterals, this.largeLiteralThreshold, response.getLimiter(), pool);
+        }
+
+        return parseSparqlResponse(response, (ResultSchema) null);
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and get back the results in column form,
+     * parsed once and cheap to iterate over many times
+     *
+     * @param query SPARQL SELECT
+     * @return A SelectResultSetColumnar with the results of the SELECT Query
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultSetColumnar executeSelectColumnar(String query) throws SprotocolException, IOException {
+        final SelectResultSetColumnarBuilder builder = new SelectResultSetColumnarBuilder();
+        executeSelect(query, builder);
+        return builder.getResultSet();
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and get back the results as term IDs
+     * from a TermDictionary of their own
+     *
+     * @param query SPARQL SELECT
+     * @return A SelectResultSetEncoded with the results of the SELECT Query
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultSetEncoded executeSelectEncoded(String query) throws SprotocolException, IOException {
+        return executeSelectEncoded(query, new TermDictionary());
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and get back the results as term IDs
+     * from a given, possibly shared, TermDictionary
+     *
+     * @param query SPARQL SELECT
+     * @param dictionary the dictionary to encode the terms of the results with
+     * @return A SelectResultSetEncoded with the results of the SELECT Query
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultSetEncoded executeSelectEncoded(String query, TermDictionary dictionary) throws SprotocolException, IOException {
+        final SelectResultSetEncodedBuilder builder = new SelectResultSetEncodedBuilder(dictionary);
+        executeSelect(query, builder);
+        return builder.getResultSet();
+    }
+
+    /**
+     * Send a SPARQL SELECT Query and get back the results encoded in direct memory,
+     * outside of the Java heap, for results kept for a long time
+     *
+     * @param query SPARQL SELECT
+     * @return A SelectResultSetOffHeap with the results of the SELECT Query
+     * @throws SprotocolException which is a run time exception
+     * @throws IOException
+     */
+    public SelectResultSetOffHeap executeSelectOffHeap(String query) throws SprotocolException, IOException {
+        final SelectResultSetOffHeapBuilder builder = new SelectResultSetOffHeapBuilder();
+        executeSelect(query, builder);
+        return builder.getResultSet();
     }
 
     /**
@@ -119,7 +419,7 @@ public class SparqlQueryProtocolClient {
      * @throws IOException are also thrown when parsing the XML
      */
     public boolean executeAsk(String query) throws SprotocolException, IOException {
-        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeader, this.sparqlEndpoint, true, getTimeout());
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeaderFor(QueryForm.ASK), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
         final Pair<Boolean,Boolean> ask = processAskResponse(response);
         if (ask.getFirst().booleanValue() == false) {
             throw new SprotocolException("Query not of type SPARQL ASK",null);
@@ -177,6 +477,288 @@ public class SparqlQueryProtocolClient {
         return executeSparqlRawAccept(query, accept);
     }
 
+    /**
+     * Send a SPARQL CONSTRUCT and pass the triples of the returned graph to a handler,
+     * as they are parsed from the response, without ever holding the graph in memory
+     *
+     * @param query a construct query
+     * @param handler called for each triple
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException
+     */
+    public void executeConstruct(String query, TripleHandler handler) throws SprotocolException, IOException {
+        openRdfParser(query).parse(handler);
+    }
+
+    /**
+     * Send a SPARQL CONSTRUCT and iterate over the triples of the returned graph,
+     * which are parsed from the response as they are asked for
+     *
+     * @param query a construct query
+     * @return TripleIterator to close if it is not read to the end
+     * @throws SprotocolException
+     * @throws IOException
+     */
+    public TripleIterator executeConstructTriples(String query) throws SprotocolException, IOException {
+        return new TripleIterator(openRdfParser(query));
+    }
+
+    /**
+     * Send a SPARQL DESCRIBE and pass the triples of the returned graph to a handler,
+     * as they are parsed from the response, without ever holding the graph in memory
+     *
+     * @param query a describe query
+     * @param handler called for each triple
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException
+     */
+    public void executeDescribe(String query, TripleHandler handler) throws SprotocolException, IOException {
+        openRdfParser(query).parse(handler);
+    }
+
+    /**
+     * Send a SPARQL DESCRIBE and iterate over the triples of the returned graph,
+     * which are parsed from the response as they are asked for
+     *
+     * @param query a describe query
+     * @return TripleIterator to close if it is not read to the end
+     * @throws SprotocolException
+     * @throws IOException
+     */
+    public TripleIterator executeDescribeTriples(String query) throws SprotocolException, IOException {
+        return new TripleIterator(openRdfParser(query));
+    }
+
+    /**
+     * Publish the triples of the graph returned by a SPARQL CONSTRUCT, read from the
+     * response on a pool of threads kept for blocking reads as subscribers ask for them
+     *
+     * @param query a construct query
+     * @return Flow.Publisher which sends the query once for each subscriber
+     */
+    public Flow.Publisher<Triple> executeConstructPublisher(String query) {
+        return executeConstructPublisher(query, ResultPublisher.defaultExecutor());
+    }
+
+    /**
+     * Publish the triples of the graph returned by a SPARQL CONSTRUCT, read from the
+     * response on an executor as subscribers ask for them, see executeSelectPublisher
+     *
+     * @param query a construct query
+     * @param executor runs the tasks reading the response
+     * @return Flow.Publisher which sends the query once for each subscriber
+     */
+    public Flow.Publisher<Triple> executeConstructPublisher(String query, Executor executor) {
+        return graphPublisher(query, executor);
+    }
+
+    /**
+     * Publish the triples of the graph returned by a SPARQL DESCRIBE, read from the
+     * response on a pool of threads kept for blocking reads as subscribers ask for them
+     *
+     * @param query a describe query
+     * @return Flow.Publisher which sends the query once for each subscriber
+     */
+    public Flow.Publisher<Triple> executeDescribePublisher(String query) {
+        return executeDescribePublisher(query, ResultPublisher.defaultExecutor());
+    }
+
+    /**
+     * Publish the triples of the graph returned by a SPARQL DESCRIBE, read from the
+     * response on an executor as subscribers ask for them, see executeSelectPublisher
+     *
+     * @param query a describe query
+     * @param executor runs the tasks reading the response
+     * @return Flow.Publisher which sends the query once for each subscriber
+     */
+    public Flow.Publisher<Triple> executeDescribePublisher(String query, Executor executor) {
+        return graphPublisher(query, executor);
+    }
+
+    private Flow.Publisher<Triple> graphPublisher(final String query, Executor executor) {
+        return new ResultPublisher<Triple>(new ResultPublisher.Opener<Triple>() {
+            @Override
+            public Iterator<Triple> open() throws SprotocolException, IOException {
+                return new TripleIterator(openRdfParser(query));
+            }
+        }, executor);
+    }
+
+    /**
+     * Send a SPARQL CONSTRUCT and parse the returned graph on all the cores of the common ForkJoinPool
+     *
+     * @param query a construct query
+     * @param handler called for each triple, from many threads at once unless ordered
+     * @param ordered whether the triples are passed to the handler one at a time, in the order of the graph
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException
+     */
+    public void executeConstructParallel(String query, TripleHandler handler, boolean ordered) throws SprotocolException, IOException {
+        executeConstructParallel(query, handler, ordered, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Send a SPARQL CONSTRUCT and parse the returned graph in chunks on a ForkJoinPool
+     *
+     * The graph is read into memory, or into a temporary file if setSpoolParallelGraphs is
+     * set, then split into chunks of lines. Only line based formats (N-Triples) can be split, other formats are parsed as they are read, as
+     * executeConstruct does, calling the handler from the calling thread.
+     *
+     * @param query a construct query
+     * @param handler called for each triple, from many threads at once unless ordered
+     * @param ordered whether the triples are passed to the handler one at a time, in the order of the graph
+     * @param pool the ForkJoinPool to parse the graph on
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException
+     */
+    public void executeConstructParallel(String query, TripleHandler handler, boolean ordered, ForkJoinPool pool) throws SprotocolException, IOException {
+        parseGraphParallel(query, handler, ordered, pool);
+    }
+
+    /**
+     * Send a SPARQL DESCRIBE and parse the returned graph on all the cores of the common ForkJoinPool
+     *
+     * @param query a describe query
+     * @param handler called for each triple, from many threads at once unless ordered
+     * @param ordered whether the triples are passed to the handler one at a time, in the order of the graph
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException
+     */
+    public void executeDescribeParallel(String query, TripleHandler handler, boolean ordered) throws SprotocolException, IOException {
+        executeDescribeParallel(query, handler, ordered, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Send a SPARQL DESCRIBE and parse the returned graph in chunks on a ForkJoinPool,
+     * as executeConstructParallel does
+     *
+     * @param query a describe query
+     * @param handler called for each triple, from many threads at once unless ordered
+     * @param ordered whether the triples are passed to the handler one at a time, in the order of the graph
+     * @param pool the ForkJoinPool to parse the graph on
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException
+     */
+    public void executeDescribeParallel(String query, TripleHandler handler, boolean ordered, ForkJoinPool pool) throws SprotocolException, IOException {
+        parseGraphParallel(query, handler, ordered, pool);
+    }
+
+    /**
+     * Send a graph query, preferring N-Triples, and parse the response in chunks if it is
+     */
+    private void parseGraphParallel(String query, TripleHandler handler, boolean ordered, ForkJoinPool pool) throws SprotocolException, IOException {
+        final SparqlStreamingResponse response = SparqlProtocolClientUtils.sparqlQueryStream(query, RequestType.QUERY, SprotocolConstants.PARALLEL_TRIPLES_ACCEPT_HEADER, this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+        final String contentType = response.getContentType();
+
+        if (SprotocolConstants.RDF_NTRIPLES_MIME.equals(contentType) || SprotocolConstants.RDF_NT_MIME.equals(contentType)) {
+            if (this.spoolParallelGraphs) {
+                final Path file = response.spoolToFile();
+                try {
+                    ParallelNTriplesParser.parse(file, this.termInterner, this.lazyLiterals, this.largeLiteralThreshold, response.getLimiter(), handler, ordered, pool);
+                } finally {
+                    try {
+                        Files.delete(file);
+                    } catch (final IOException e) {
+                        // e.g. while it is still mapped, on some platforms
+                        file.toFile().deleteOnExit();
+                    }
+                }
+            } else {
+                final CharBuffer graph = response.readFully();
+                ParallelNTriplesParser.parse(graph.array(), graph.limit(), this.termInterner, this.lazyLiterals, this.largeLiteralThreshold, response.getLimiter(), handler, ordered, pool);
+            }
+        } else {
+            openRdfParser(response).parse(handler);
+        }
+    }
+
+    /**
+     * Send a SELECT query, and collect the results as they are parsed from the response
+     * stream, spilling them to a file if they take more than the heap budget
+     */
+    private SelectResultSet executeSelectSpilling(String query, ResultSchema schema) throws SprotocolException, IOException {
+        final SelectResultSetSpillingBuilder builder = new SelectResultSetSpillingBuilder(this.resultHeapBudget);
+        final SparqlResultsParser parser = openResultsParser(query);
+        parser.setSchema(schema);
+        boolean built = false;
+        try {
+            parser.parse(builder);
+            final SelectResultSet results = builder.getResultSet();
+            built = true;
+            return results;
+        } finally {
+            if (!built) {
+                builder.discard();
+            }
+        }
+    }
+
+    /**
+     * Send a SELECT query, and collect the results as they are parsed from the response
+     * stream, so the rows are counted against the ResultLimits while it is read, and the
+     * connection is dropped as soon as one is gone over
+     */
+    private SelectResultSet executeSelectLimited(String query, ResultSchema schema) throws SprotocolException, IOException {
+        final SparqlResultsParser parser = openResultsParser(query);
+        parser.setSchema(schema);
+        final SelectResultSetSimpleBuilder builder = new SelectResultSetSimpleBuilder();
+        parser.parse(builder);
+        return builder.getResultSet();
+    }
+
+    /**
+     * Send a SELECT query, and open a parser on the response stream
+     */
+    private SparqlResultsParser openResultsParser(String query) throws SprotocolException, IOException {
+        final SparqlStreamingResponse response = SparqlProtocolClientUtils.sparqlQueryStream(query, RequestType.QUERY, acceptHeaderFor(QueryForm.SELECT), this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
+        try {
+            final SparqlResultsParser parser = SparqlResultsParser.create(response.getContentType(), response.getReader(), this.termInterner, this.lazyLiterals, this.largeLiteralThreshold);
+            parser.setLimiter(response.getLimiter());
+            return parser;
+        } catch (final IOException e) {
+            closeQuietly(response);
+            throw e;
+        } catch (final RuntimeException e) {
+            closeQuietly(response);
+            throw e;
+        }
+    }
+
+    /**
+     * Send a graph query, asking for a format which can be parsed, and open a parser on the response stream
+     */
+    private RdfParser openRdfParser(String query) throws SprotocolException, IOException {
+        return openRdfParser(SparqlProtocolClientUtils.sparqlQueryStream(query, RequestType.QUERY, SprotocolConstants.TRIPLES_ACCEPT_HEADER, this.sparqlEndpoint, true, getTimeout(), this.resultLimits));
+    }
+
+    /**
+     * Open a parser on a response stream, closing the response if that fails
+     */
+    private RdfParser openRdfParser(SparqlStreamingResponse response) throws SprotocolException, IOException {
+        try {
+            final RdfParser parser = RdfParser.create(response.getContentType(), response.getReader(), this.termInterner, this.lazyLiterals, this.largeLiteralThreshold);
+            parser.setLimiter(response.getLimiter());
+            return parser;
+        } catch (final IOException e) {
+            closeQuietly(response);
+            throw e;
+        } catch (final RuntimeException e) {
+            closeQuietly(response);
+            throw e;
+        }
+    }
+
+    /**
+     * Close a response which no parser was opened on, as the caller could not close it
+     */
+    private static void closeQuietly(SparqlStreamingResponse response) {
+        try {
+            response.close();
+        } catch (final IOException e) {
+            // the original exception is more useful
+        }
+    }
+
     /**
      * Send a SPARQL Query via POST
      *
@@ -194,69 +776,37 @@ public class SparqlQueryProtocolClient {
      * @throws IOException are also thrown
      */
     public String executeSparqlRawAccept(String query, String acceptHeader) throws SprotocolException, IOException {
-        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeader, this.sparqlEndpoint, true, getTimeout());
+        final SparqlResponse response = SparqlProtocolClientUtils.sparqlQueryAccept(query, RequestType.QUERY, acceptHeader, this.sparqlEndpoint, true, getTimeout(), this.resultLimits);
         return response.getData();
     }
 
-    private SelectResultSet parseSparqlResponse(SparqlResponse response) throws SprotocolException, IOException{
+    private SelectResultSet parseSparqlResponse(SparqlResponse response, ResultSchema schema) throws SprotocolException, IOException{
         final String contentType = response.getContentType();
 
-        if (SprotocolConstants.SPARQL_RESULTS_XML_MIME.equals(contentType)) {
-            return parseSparqlResultXML(response.getData());
+        if (!SprotocolConstants.SPARQL_RESULTS_XML_MIME.equals(contentType) && !SprotocolConstants.SPARQL_RESULTS_TSV_MIME.equals(contentType)) {
+            throw new SprotocolException("No SELECT results parser defined for " + contentType, null);
         }
 
-        if (SprotocolConstants.SPARQL_RESULTS_TSV_MIME.equals(contentType)) {
-            return parseSparqlResultTsv(response.getData());
+        if (null != response.getLimiter()) {
+            // count the rows once, as they are parsed now, rather than on every pass over lazy TSV results
+            final SparqlResultsParser parser = SparqlResultsParser.create(contentType, new StringReader(response.getData()), this.termInterner, this.lazyLiterals, this.largeLiteralThreshold);
+            parser.setSchema(schema);
+            parser.setLimiter(response.getLimiter());
+            final SelectResultSetSimpleBuilder builder = new SelectResultSetSimpleBuilder();
+            parser.parse(builder);
+            return builder.getResultSet();
         }
 
-        throw new SprotocolException("No SELECT results parser defined for " + contentType, null);
+        if (SprotocolConstants.SPARQL_RESULTS_XML_MIME.equals(contentType)) {
+            return parseSparqlResultXML(response.getData());
+        }
+        return parseSparqlResultTsv(response.getData(), schema);
     }
 
-    /**
-     * This parses a result binding and returns one of the SPARQL Results Elements
-     *
-     * @throws SprotocolException which is a run time exception
-     */
-    private SelectResultRow parseSparqlResult(Element resultEl) throws SprotocolException {
-        final HashMap<String,SparqlResource> result = new HashMap<String,SparqlResource>();
-
-        final NodeList bindings = resultEl.getElementsByTagName("binding");
-        for (int j = 0 ; j < bindings.getLength();j++) {
-            final Element bindingElement = (Element) bindings.item(j);
-            final NodeList iriBindings = bindingElement.getElementsByTagName("uri");
-            for (int k = 0 ; k < iriBindings.getLength();k++) {
-                final Element iriEl = (Element) iriBindings.item(k);
-                final String iriValue = iriEl.getTextContent();
-                final IRI iri = new IRI(iriValue);
-                result.put(bindingElement.getAttribute("name"),iri);
-            }
-            final NodeList literalBindings = bindingElement.getElementsByTagName("literal");
-            for (int k = 0 ; k < literalBindings.getLength();k++) {
-                final Element literalEl = (Element) literalBindings.item(k);
-                final String literal = literalEl.getTextContent();
-
-                Literal lit;
-                if (literalEl.getAttribute("datatype") != null && !literalEl.getAttribute("datatype").equals("")
-                        && literalEl.getAttribute("xml:lang") != null && !literalEl.getAttribute("xml:lang").equals("")) {
-                    lit = new Literal(literal,literalEl.getAttribute("datatype"),literalEl.getAttribute("xml:lang"));
-                } else if ((literalEl.getAttribute("datatype") != null && !literalEl.getAttribute("datatype").equals(""))) {
-                    lit = new Literal(literal,literalEl.getAttribute("datatype"), null);
-                } else if ((literalEl.getAttribute("xml:lang") != null && !literalEl.getAttribute("xml:lang").equals(""))) {
-                    lit = new Literal(literal,null,literalEl.getAttribute("xml:lang"));
-                } else {
-                    lit = new Literal(literal,null,null);
-                }
-                result.put(bindingElement.getAttribute("name"),lit);
-            }
-            final NodeList bnodeBindings = bindingElement.getElementsByTagName("bnode");
-            for (int k = 0 ; k < bnodeBindings.getLength();k++) {
-                final Element bnodeEl = (Element) bnodeBindings.item(k);
-                final String bnodeId = bnodeEl.getTextContent();
-                final BNode bnode = new BNode(bnodeId);
-                result.put(bindingElement.getAttribute("name"),bnode);
-            }
-        }
-        return new SelectResultRowSimple(result);
+    private void parseSparqlResponse(SparqlResponse response, ResultHandler handler) throws SprotocolException, IOException {
+        final SparqlResultsParser parser = SparqlResultsParser.create(response.getContentType(), new StringReader(response.getData()), this.termInterner, this.lazyLiterals, this.largeLiteralThreshold);
+        parser.setLimiter(response.getLimiter());
+        parser.parse(handler);
     }
 
     /**
@@ -265,54 +815,25 @@ public class SparqlQueryProtocolClient {
      * @throws SprotocolException which is a run time exception
      */
     private SelectResultSet parseSparqlResultXML(String xml) throws SprotocolException, IOException {
-        final ArrayList<String> head = new ArrayList<String>();
-        final ArrayList<SelectResultRow> results = new ArrayList<SelectResultRow>();
-
-        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setValidating(false);
-
-        try {
-            //create document builder to parse the xml
-            final DocumentBuilder db = dbf.newDocumentBuilder();
-            final Document dom = db.parse(new InputSource(new StringReader(xml)));
-            //get the root element
-            final Element docEle = dom.getDocumentElement();
-
-            final NodeList variables = docEle.getElementsByTagName("variable");
-            if (variables.getLength() > 0 ) {
-                for (int i = 0 ; i < variables.getLength();i++) {
-                    //get the variable element
-                    final Element el = (Element) variables.item(i);
-                    head.add(el.getAttribute("name"));
-                }
-            }
-
-            final NodeList result = docEle.getElementsByTagName("result");
-            for (int i = 0 ; i < result.getLength();i++) {
-                //get the result element
-                final Element bindingEl = (Element) result.item(i);
-                final SelectResultRow sr = parseSparqlResult(bindingEl);
-                results.add(sr);
-            }
-        } catch (final IOException e) {
-            throw new IOException("IOException caught by sprotocol", e);
-        } catch(final Exception e){
-            throw new SprotocolException("Error parsing XML returned via SPARQL Endpoint", e);
-        }
-
-        return new SelectResultSetSimple(head, results);
+        final SelectResultSetSimpleBuilder builder = new SelectResultSetSimpleBuilder();
+        final SparqlResultsXmlParser parser = new SparqlResultsXmlParser(new StringReader(xml));
+        parser.setTermInterner(this.termInterner);
+        parser.setLargeLiteralThreshold(this.largeLiteralThreshold);
+        parser.parse(builder);
+        return builder.getResultSet();
     }
 
     /**
      * Parse TSV results into a result set.
      *
      * @param tsv TSV text returned from a SPARQL select query
+     * @param schema hints of what the variables are bound to, may be null
      * @return
      * @throws SprotocolException on parse error
      * @throws IOException
      */
-    private SelectResultSet parseSparqlResultTsv(String tsv) throws SprotocolException, IOException {
-        return new SelectResultSetTsv(tsv);
+    private SelectResultSet parseSparqlResultTsv(String tsv, ResultSchema schema) throws SprotocolException, IOException {
+        return new SelectResultSetTsv(tsv, this.termInterner, this.lazyLiterals, this.largeLiteralThreshold, schema);
     }
 
     /**
@@ -341,28 +862,13 @@ public class SparqlQueryProtocolClient {
      * @throws SprotocolException
      */
     private Pair<Boolean,Boolean> processAskResponseXML(String xml) throws IOException, SprotocolException {
-        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setValidating(false);
-
+        final SparqlResultsXmlParser parser = new SparqlResultsXmlParser(new StringReader(xml));
         try {
-            //create document builder to parse the xml
-            final DocumentBuilder db = dbf.newDocumentBuilder();
-            final Document dom = db.parse(new InputSource(new StringReader(xml)));
-            //get the root element
-            final Element docEle = dom.getDocumentElement();
-
-            final NodeList bool = docEle.getElementsByTagName("boolean");
-            if (bool.getLength() == 1 ) {
-                final String b = bool.item(0).getTextContent();
-                if (b.equals("true")) {
-                    return new Pair<Boolean,Boolean>(true,true);
-                }
-                return new Pair<Boolean,Boolean>(true,false);
+            if (parser.isBooleanResult()) {
+                return new Pair<Boolean,Boolean>(true, parser.getBooleanResult());
             }
-        } catch (final IOException e) {
-            throw new IOException("Error parsing XML returned via SPARQL Endpoint", e);
-        } catch(final Exception e){
-            throw new SprotocolException("Error parsing XML returned via SPARQL Endpoint", e);
+        } finally {
+            parser.close();
         }
 
         return new Pair<Boolean,Boolean>(false,false);
@@ -378,11 +884,14 @@ public class SparqlQueryProtocolClient {
 
     /**
      * Sets new HTTP accept header this client will use when making requests.
+     * By default each form of query is sent with a header of its own, listing the
+     * formats parsed for it, setting a header replaces those.
      *
      * @param acceptHeader Accept header to make requests with
      */
     public void setAcceptHeader(String acceptHeader) {
         this.acceptHeader = acceptHeader;
+        this.acceptHeaderSet = true;
     }
 
     /**
@@ -391,6 +900,144 @@ public class SparqlQueryProtocolClient {
     public String getAcceptHeader() {
         return this.acceptHeader;
     }
+
+    /**
+     * Sets the interner used to create the IRIs and Literals of the results,
+     * worth it when results are kept around for a long time
+     *
+     * @param termInterner TermInterner to use, or null (the default) not to intern terms
+     */
+    public void setTermInterner(TermInterner termInterner) {
+        this.termInterner = termInterner;
+    }
+
+    /**
+     * @return the TermInterner used by this client, null if terms are not interned
+     */
+    public TermInterner getTermInterner() {
+        return this.termInterner;
+    }
+
+    /**
+     * Sets whether the values of literals are only decoded (copied out of the response
+     * and unescaped) when first asked for, worth it for wide results of which only a few
+     * variables are read.
+     *
+     * Undecoded literals keep the chars of the response they were parsed from.
+     * Only TSV results are decoded lazily, as XML ones are decoded by the XML parser.
+     *
+     * @param lazyLiterals true to decode literals lazily, false (the default) to decode them as they are parsed
+     */
+    public void setLazyLiterals(boolean lazyLiterals) {
+        this.lazyLiterals = lazyLiterals;
+    }
+
+    /**
+     * @return whether the values of literals are decoded when first asked for
+     */
+    public boolean isLazyLiterals() {
+        return this.lazyLiterals;
+    }
+
+    /**
+     * Sets the length above which the values of literals are large, such as big geometries
+     * or documents. Large values are kept as chars and never copied into a String by the parsers,
+     * read them with Literal.getValueAsReader or Literal.getValueAsCharSequence.
+     *
+     * @param chars length in chars, Integer.MAX_VALUE (the default) for no literal to be large
+     */
+    public void setLargeLiteralThreshold(int chars) {
+        if (chars < 0) {
+            throw new IllegalArgumentException("The large literal threshold can not be negative");
+        }
+        this.largeLiteralThreshold = chars;
+    }
+
+    /**
+     * @return the length in chars above which the values of literals are large
+     */
+    public int getLargeLiteralThreshold() {
+        return this.largeLiteralThreshold;
+    }
+
+    /**
+     * Sets the bytes of heap the results of executeSelect may take, larger results are
+     * spilled to a temporary file and returned as a SelectResultSetMapped, which must be
+     * closed to delete the file. With a budget the results are parsed as they are received,
+     * rather than once the whole response is in memory.
+     *
+     * @param bytes estimated bytes of heap, Long.MAX_VALUE (the default) to keep all results on the heap
+     */
+    public void setResultHeapBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The result heap budget can not be negative");
+        }
+        this.resultHeapBudget = bytes;
+    }
+
+    /**
+     * @return the bytes of heap the results of executeSelect may take before they are spilled to a file
+     */
+    public long getResultHeapBudget() {
+        return this.resultHeapBudget;
+    }
+
+    /**
+     * Sets whether executeConstructParallel and executeDescribeParallel download the graph
+     * to a temporary file, which is memory mapped and parsed in chunks from there, rather
+     * than read it into memory. In memory a graph can be at most about 2G chars.
+     *
+     * @param spool true to download graphs to a file, false (the default) to read them into memory
+     */
+    public void setSpoolParallelGraphs(boolean spool) {
+        this.spoolParallelGraphs = spool;
+    }
+
+    /**
+     * @return whether the graphs parsed in parallel are downloaded to a temporary file first
+     */
+    public boolean isSpoolParallelGraphs() {
+        return this.spoolParallelGraphs;
+    }
+
+    /**
+     * Sets the limits on the size of the results of each request of this client, checked
+     * as the response is read and parsed. A request going over one of them is aborted, 
+     * and a ResultLimitException thrown.
+     *
+     * With limits set, executeSelect parses the results from the response stream, rather
+     * than read it whole first, so rows are counted while the response is still being read,
+     * and results which are otherwise parsed lazily are parsed once, up front.
+     *
+     * @param limits the limits, ResultLimits.NONE (the default) for none
+     */
+    public void setResultLimits(ResultLimits limits) {
+        if (limits == null) {
+            throw new IllegalArgumentException("The result limits can not be 'null', use ResultLimits.NONE");
+        }
+        this.resultLimits = limits;
+    }
+
+    /**
+     * @return the limits on the size of the results of each request of this client
+     */
+    public ResultLimits getResultLimits() {
+        return this.resultLimits;
+    }
+
+    /**
+     * A copy of this client with other result limits, for the limits of a single request
+     * 
+     * client.withResultLimits(limits).executeSelect(query)
+     *
+     * @param limits the limits of the requests of the copy
+     * @return a new client, with the same settings as this one except for its limits
+     */
+    public SparqlQueryProtocolClient withResultLimits(ResultLimits limits) {
+        final SparqlQueryProtocolClient client = new SparqlQueryProtocolClient(this);
+        client.setResultLimits(limits);
+        return client;
+    }
 }
 
 /* vi:set ts=8 sts=4 sw=4 et: */
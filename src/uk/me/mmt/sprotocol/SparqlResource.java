@@ -35,6 +35,13 @@ public abstract class SparqlResource {
         this.value = value;
     }
 
+    /**
+     * For subclasses which store their value in another form, and override getValue()
+     */
+    SparqlResource() {
+        this.value = null;
+    }
+
     public String getValue() {
         return value;
     }
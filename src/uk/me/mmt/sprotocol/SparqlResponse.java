@@ -10,12 +10,18 @@ public class SparqlResponse {
     private final String contentType;
     private final String charset;
     private final String rawContentType;
+    private final ResultLimiter limiter;
 
     public SparqlResponse(String data, String contentType, String charset, String rawContentType) {
+        this(data, contentType, charset, rawContentType, null);
+    }
+
+    SparqlResponse(String data, String contentType, String charset, String rawContentType, ResultLimiter limiter) {
         this.data = data;
         this.contentType = contentType;
         this.charset = charset;
         this.rawContentType = rawContentType;
+        this.limiter = limiter;
     }
 
     /**
@@ -45,4 +51,11 @@ public class SparqlResponse {
     public String getRawContentType() {
         return rawContentType;
     }
+
+    /**
+     * @return the limiter of the request, for parsing the body, 'null' if it has no limits
+     */
+    ResultLimiter getLimiter() {
+        return limiter;
+    }
 }
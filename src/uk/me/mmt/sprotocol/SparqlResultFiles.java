@@ -0,0 +1,221 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Parse saved SPARQL results and RDF files offline, without a SPARQL endpoint
+ * 
+ * Files are memory mapped and decoded as UTF-8 straight from the mapped buffers into
+ * the parsers, so they are never read onto the heap, and the rows or triples are
+ * streamed out as they are parsed. The format is taken from the extension of the
+ * file, unless the mime-type is given:
+ * 
+ * .srx and .xml are SPARQL XML results, .srj and .json SPARQL JSON results, 
+ * .tsv and .csv SPARQL TSV and CSV results, .nt N-Triples, .ttl Turtle, and 
+ * .rdf and .owl RDF/XML.
+ */
+public final class SparqlResultFiles {
+
+    /**
+     * To prevent the accidental instances
+     */
+    private SparqlResultFiles() {
+        //empty
+    }
+
+    /**
+     * Open a saved SELECT result, see openSelect(Path, String, ResultSchema)
+     *
+     * @param file a SPARQL results file, its format taken from its extension
+     * @throws SprotocolException if the format is not known, or the head can not be parsed
+     * @throws IOException if the file can not be mapped
+     */
+    public static SelectResultSet openSelect(Path file) throws SprotocolException, IOException {
+        return openSelect(file, selectContentType(file), null);
+    }
+
+    /**
+     * Open a saved SELECT result, see openSelect(Path, String, ResultSchema)
+     *
+     * @param file a SPARQL results file
+     * @param contentType the SPARQL results mime-type of the file
+     * @throws SprotocolException if the format is not supported, or the head can not be parsed
+     * @throws IOException if the file can not be mapped
+     */
+    public static SelectResultSet openSelect(Path file, String contentType) throws SprotocolException, IOException {
+        return openSelect(file, contentType, null);
+    }
+
+    /**
+     * Open a saved SELECT result, parsing its rows each time it is iterated over
+     * 
+     * Only the head is parsed here, the rows are parsed from the mapped file as each
+     * iterator goes, so result files larger than the heap can be read. The iterators are
+     * Closeable, and should be closed when not run to the end. The result set stays valid
+     * for as long as it is reachable, even if the file is deleted (on most platforms).
+     *
+     * @param file a SPARQL results file
+     * @param contentType the SPARQL results mime-type of the file
+     * @param schema hints of the variables, may be 'null', used by TSV and CSV which do not
+     * tell the kind of each term, see ResultSchema
+     * @throws SprotocolException if the format is not supported, the head can not be parsed, 
+     * or the file holds the result of an ASK query
+     * @throws IOException if the file can not be mapped
+     */
+    public static SelectResultSet openSelect(Path file, String contentType, ResultSchema schema) throws SprotocolException, IOException {
+        return new SelectResultSetFile(file, contentType, schema);
+    }
+
+    /**
+     * Pass a saved SELECT or ASK result to a handler, as it is parsed
+     *
+     * @param file a SPARQL results file, its format taken from its extension
+     * @param handler called with the head, and each row or the boolean
+     * @throws SprotocolException if the result can not be parsed, or if thrown by the handler
+     * @throws IOException if the file can not be mapped
+     */
+    public static void parseResults(Path file, ResultHandler handler) throws SprotocolException, IOException {
+        parseResults(file, selectContentType(file), handler);
+    }
+
+    /**
+     * Pass a saved SELECT or ASK result to a handler, as it is parsed
+     *
+     * @param file a SPARQL results file
+     * @param contentType the SPARQL results mime-type of the file
+     * @param handler called with the head, and each row or the boolean
+     * @throws SprotocolException if the result can not be parsed, or if thrown by the handler
+     * @throws IOException if the file can not be mapped
+     */
+    public static void parseResults(Path file, String contentType, ResultHandler handler) throws SprotocolException, IOException {
+        SparqlResultsParser.create(contentType, new MappedFileReader(MappedFileReader.map(file)), null, false, Integer.MAX_VALUE).parse(handler);
+    }
+
+    /**
+     * Open a saved RDF graph, as an iterator over its triples
+     *
+     * @param file an RDF file, its format taken from its extension
+     * @return an iterator of the triples as they are parsed, close it if it is not run to the end
+     * @throws SprotocolException if the format is not known
+     * @throws IOException if the file can not be mapped
+     */
+    public static TripleIterator openTriples(Path file) throws SprotocolException, IOException {
+        return openTriples(file, rdfContentType(file));
+    }
+
+    /**
+     * Open a saved RDF graph, as an iterator over its triples
+     *
+     * @param file an RDF file
+     * @param contentType the RDF mime-type of the file
+     * @return an iterator of the triples as they are parsed, close it if it is not run to the end
+     * @throws SprotocolException if the format is not supported
+     * @throws IOException if the file can not be mapped
+     */
+    public static TripleIterator openTriples(Path file, String contentType) throws SprotocolException, IOException {
+        return new TripleIterator(createRdfParser(file, contentType));
+    }
+
+    /**
+     * Pass the triples of a saved RDF graph to a handler, as they are parsed
+     *
+     * @param file an RDF file, its format taken from its extension
+     * @param handler called for each triple
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException if the file can not be mapped
+     */
+    public static void parseTriples(Path file, TripleHandler handler) throws SprotocolException, IOException {
+        parseTriples(file, rdfContentType(file), handler);
+    }
+
+    /**
+     * Pass the triples of a saved RDF graph to a handler, as they are parsed
+     *
+     * @param file an RDF file
+     * @param contentType the RDF mime-type of the file
+     * @param handler called for each triple
+     * @throws SprotocolException if the graph can not be parsed, or if thrown by the handler
+     * @throws IOException if the file can not be mapped
+     */
+    public static void parseTriples(Path file, String contentType, TripleHandler handler) throws SprotocolException, IOException {
+        createRdfParser(file, contentType).parse(handler);
+    }
+
+    private static RdfParser createRdfParser(Path file, String contentType) throws SprotocolException, IOException {
+        return RdfParser.create(contentType, new MappedFileReader(MappedFileReader.map(file)), null, false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the SPARQL results mime-type of a file, from its extension
+     * @throws SprotocolException if the extension is not one of a SPARQL results format
+     */
+    static String selectContentType(Path file) throws SprotocolException {
+        final String extension = extension(file);
+        if ("srx".equals(extension) || "xml".equals(extension)) {
+            return SprotocolConstants.SPARQL_RESULTS_XML_MIME;
+        }
+        if ("srj".equals(extension) || "json".equals(extension)) {
+            return SprotocolConstants.SPARQL_RESULTS_JSN_MIME;
+        }
+        if ("tsv".equals(extension)) {
+            return SprotocolConstants.SPARQL_RESULTS_TSV_MIME;
+        }
+        if ("csv".equals(extension)) {
+            return SprotocolConstants.SPARQL_RESULTS_CSV_MIME;
+        }
+        throw new SprotocolException("Unable to tell the SPARQL results format of " + file + " from its extension", null);
+    }
+
+    /**
+     * @return the RDF mime-type of a file, from its extension
+     * @throws SprotocolException if the extension is not one of an RDF format
+     */
+    static String rdfContentType(Path file) throws SprotocolException {
+        final String extension = extension(file);
+        if ("nt".equals(extension)) {
+            return SprotocolConstants.RDF_NTRIPLES_MIME;
+        }
+        if ("ttl".equals(extension)) {
+            return SprotocolConstants.RDF_TTL_MIME;
+        }
+        if ("rdf".equals(extension) || "owl".equals(extension) || "xml".equals(extension)) {
+            return SprotocolConstants.RDF_XML_MIME;
+        }
+        throw new SprotocolException("Unable to tell the RDF format of " + file + " from its extension", null);
+    }
+
+    private static String extension(Path file) {
+        final Path name = file.getFileName();
+        if (name == null) {
+            return "";
+        }
+        final String s = name.toString();
+        final int dot = s.lastIndexOf('.');
+        return (dot == -1) ? "" : s.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
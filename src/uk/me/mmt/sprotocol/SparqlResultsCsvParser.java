@@ -0,0 +1,311 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A streaming parser of the SPARQL 1.1 Query Results CSV format
+ * 
+ * CSV keeps only the text of each value, so the kind of term is worked out from it:
+ * values starting "_:" are blank nodes, values which are absolute IRIs (a scheme,
+ * then no whitespace) are IRIs, and everything else is a plain literal. A schema set
+ * with setSchema says what each column is bound to instead, and which datatype its
+ * literals have. An empty field is unbound, a quoted empty field ("") is the empty
+ * literal.
+ */
+final class SparqlResultsCsvParser extends SparqlResultsParser {
+    private static final int BUFFER_SIZE = 16384;
+
+    // the ways a field can end
+    private static final int END_OF_FIELD = 0;
+    private static final int END_OF_RECORD = 1;
+    private static final int END_OF_INPUT = 2;
+
+    private final Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    // the row being read, for errors
+    private int row = 1;
+
+    private final SelectResultHead head;
+
+    // the last field read, and whether it was quoted
+    private final StringBuilder field = new StringBuilder();
+    private boolean quoted;
+
+    // with a schema, the hinted type and datatype of each column
+    private TermType[] columnTypes;
+    private String[] columnDatatypes;
+
+    /**
+     * Create a parser, reading the header record straight away.
+     *
+     * @param in Reader over the CSV results
+     * @throws SprotocolException if the header can not be parsed
+     * @throws IOException if the reader fails
+     */
+    SparqlResultsCsvParser(Reader in) throws SprotocolException, IOException {
+        this.in = in;
+
+        final List<String> vars = new ArrayList<String>();
+        if (this.pos < this.limit || fill()) {
+            if (this.buf[this.pos] == '\uFEFF') {
+                this.pos++;
+            }
+            int end;
+            do {
+                end = readField();
+                String name = this.field.toString();
+                if (name.startsWith("?") || name.startsWith("$")) {
+                    name = name.substring(1);
+                }
+                if (name.length() > 0) {
+                    vars.add(name);
+                }
+            } while (end == END_OF_FIELD);
+        }
+        this.head = new SelectResultHead(vars);
+    }
+
+    @Override
+    SelectResultHead getHead() {
+        return head;
+    }
+
+    @Override
+    void setSchema(ResultSchema schema) {
+        if (schema == null) {
+            this.columnTypes = null;
+            this.columnDatatypes = null;
+            return;
+        }
+        final int columns = this.head.size();
+        this.columnTypes = new TermType[columns];
+        this.columnDatatypes = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            this.columnTypes[i] = schema.getType(this.head.get(i));
+            this.columnDatatypes[i] = schema.getDatatype(this.head.get(i));
+        }
+    }
+
+    @Override
+    boolean readRow(SparqlResource[] bindings) throws SprotocolException, IOException {
+        if (this.pos == this.limit && !fill()) {
+            return false;
+        }
+
+        Arrays.fill(bindings, null);
+        final int columns = this.head.size();
+        int column = 0;
+        int end;
+        do {
+            end = readField();
+            if (column >= columns) {
+                // with no variables, each row is a blank line
+                if (columns == 0 && this.field.length() == 0 && !this.quoted) {
+                    continue;
+                }
+                throw new SprotocolException(String.format("Invalid CSV results, row %d has more than the %d fields of the header", this.row, columns), null);
+            }
+            bindings[column] = getTerm(column);
+            column++;
+        } while (end == END_OF_FIELD);
+
+        this.row++;
+        return true;
+    }
+
+    /**
+     * Parse the last field read into a term
+     *
+     * @return null if the field is empty, i.e. the variable is unbound
+     */
+    private SparqlResource getTerm(int column) throws SprotocolException {
+        final StringBuilder value = this.field;
+        if (value.length() == 0 && !this.quoted) {
+            return null;
+        }
+
+        final TermType type = (this.columnTypes != null) ? this.columnTypes[column] : null;
+        if (type == TermType.IRI) {
+            return createIRI(value.toString());
+        }
+        if (type == TermType.BNODE) {
+            return new BNode(isBNode(value) ? value.substring(2) : value.toString());
+        }
+        if (type == TermType.LITERAL || type == TermType.TYPED_LITERAL) {
+            return createValueLiteral(type == TermType.TYPED_LITERAL ? this.columnDatatypes[column] : null);
+        }
+
+        if (isBNode(value)) {
+            return new BNode(value.substring(2));
+        }
+        if (isAbsoluteIRI(value)) {
+            return createIRI(value.toString());
+        }
+        return createValueLiteral(null);
+    }
+
+    private Literal createValueLiteral(String datatype) {
+        final StringBuilder value = this.field;
+        if (isLargeLiteral(value.length())) {
+            final char[] chars = new char[value.length()];
+            value.getChars(0, chars.length, chars, 0);
+            // do not keep a builder as large as the literal around
+            value.setLength(0);
+            value.trimToSize();
+            return createLargeLiteral(chars, 0, chars.length, datatype, null);
+        }
+        return createLiteral(value.toString(), datatype, null);
+    }
+
+    private static boolean isBNode(CharSequence value) {
+        return value.length() > 2 && value.charAt(0) == '_' && value.charAt(1) == ':';
+    }
+
+    /**
+     * Whether a value looks like an absolute IRI, a scheme followed by ':' and then
+     * characters which an IRI can contain.
+     */
+    static boolean isAbsoluteIRI(CharSequence value) {
+        final int length = value.length();
+        if (length < 3 || !isAsciiLetter(value.charAt(0))) {
+            return false;
+        }
+        int i = 1;
+        while (i < length) {
+            final char c = value.charAt(i);
+            if (c == ':') {
+                break;
+            }
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+            i++;
+        }
+        if (i >= length - 1) {
+            return false;
+        }
+        for (i++; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c <= ' ' || c == '<' || c == '>' || c == '"' || c == '{' || c == '}' || c == '|' || c == '\\' || c == '^' || c == '`') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Read a field into field, unquoting it if it is quoted
+     *
+     * @return how the field ended, END_OF_FIELD, END_OF_RECORD or END_OF_INPUT
+     */
+    private int readField() throws SprotocolException, IOException {
+        final StringBuilder sb = this.field;
+        sb.setLength(0);
+        this.quoted = (this.pos < this.limit || fill()) && this.buf[this.pos] == '"';
+
+        if (this.quoted) {
+            this.pos++;
+            while (true) {
+                if (this.pos == this.limit && !fill()) {
+                    throw new SprotocolException(String.format("Invalid CSV results, unterminated quoted field in row %d", this.row), null);
+                }
+                int end = this.pos;
+                while (end < this.limit && this.buf[end] != '"') {
+                    end++;
+                }
+                sb.append(this.buf, this.pos, end - this.pos);
+                this.pos = end;
+                if (end == this.limit) {
+                    continue;
+                }
+                // a quote, either escaping a quote or ending the field
+                this.pos++;
+                if ((this.pos < this.limit || fill()) && this.buf[this.pos] == '"') {
+                    sb.append('"');
+                    this.pos++;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        while (this.pos < this.limit || fill()) {
+            int end = this.pos;
+            while (end < this.limit) {
+                final char c = this.buf[end];
+                if (c == ',' || c == '\n' || c == '\r') {
+                    break;
+                }
+                end++;
+            }
+            if (this.quoted && end > this.pos) {
+                throw new SprotocolException(String.format("Invalid CSV results, characters after a quoted field in row %d", this.row), null);
+            }
+            sb.append(this.buf, this.pos, end - this.pos);
+            this.pos = end;
+            if (end == this.limit) {
+                continue;
+            }
+
+            final char c = this.buf[this.pos++];
+            if (c == ',') {
+                return END_OF_FIELD;
+            }
+            if (c == '\r' && (this.pos < this.limit || fill()) && this.buf[this.pos] == '\n') {
+                this.pos++;
+            }
+            return END_OF_RECORD;
+        }
+        return END_OF_INPUT;
+    }
+
+    /**
+     * Read more input into the buffer, once all of it has been consumed
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        final int read = this.in.read(this.buf, 0, this.buf.length);
+        this.pos = 0;
+        this.limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,507 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A streaming parser of the SPARQL 1.1 Query Results JSON format
+ * 
+ * The head is read when the parser is created, then each binding of the results is
+ * read as the rows are asked for, so only the current result is ever held in memory.
+ * As the variables are needed before the first row, the head must come before the
+ * results, as it does in the responses of SPARQL endpoints. Members of the objects
+ * which are not part of the format, such as "link", are skipped.
+ */
+final class SparqlResultsJsonParser extends SparqlResultsParser {
+    private static final int BUFFER_SIZE = 16384;
+
+    private final Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    // the line of pos, for errors
+    private int line = 1;
+
+    private final SelectResultHead head;
+    private boolean isBoolean;
+    private boolean booleanResult;
+    private boolean finished;
+    private boolean firstRow = true;
+
+    // the last string read
+    private final StringBuilder string = new StringBuilder();
+
+    /**
+     * Create a parser, reading up to the start of the bindings, or the boolean.
+     *
+     * @param in Reader over the JSON results
+     * @throws SprotocolException if the head can not be parsed
+     * @throws IOException if the reader fails
+     */
+    SparqlResultsJsonParser(Reader in) throws SprotocolException, IOException {
+        this.in = in;
+
+        final List<String> vars = new ArrayList<String>();
+        boolean hasHead = false;
+        boolean inBindings = false;
+        expect('{');
+        if (peek() == '}') {
+            throw error("no head or results");
+        }
+        while (!inBindings) {
+            readString();
+            expect(':');
+            if (contentEquals("head")) {
+                readHead(vars);
+                hasHead = true;
+            } else if (contentEquals("boolean")) {
+                this.booleanResult = readBoolean();
+                this.isBoolean = true;
+            } else if (contentEquals("results")) {
+                if (!hasHead) {
+                    throw error("the head must come before the results");
+                }
+                inBindings = readToBindings();
+            } else {
+                skipValue();
+            }
+            if (!inBindings && !endOfMembers('}')) {
+                break;
+            }
+        }
+        if (!hasHead) {
+            throw error("no head found");
+        }
+        this.finished = !inBindings;
+
+        this.head = new SelectResultHead(vars);
+    }
+
+    @Override
+    SelectResultHead getHead() {
+        return head;
+    }
+
+    @Override
+    boolean isBooleanResult() {
+        return isBoolean;
+    }
+
+    @Override
+    boolean getBooleanResult() {
+        if (!isBoolean) {
+            return super.getBooleanResult();
+        }
+        return booleanResult;
+    }
+
+    @Override
+    boolean readRow(SparqlResource[] bindings) throws SprotocolException, IOException {
+        if (finished) {
+            return false;
+        }
+
+        final int c = peek();
+        if (c == ']') {
+            this.pos++;
+            // the members after the bindings are not read
+            finished = true;
+            return false;
+        }
+        if (!firstRow) {
+            expect(',');
+        }
+        firstRow = false;
+
+        Arrays.fill(bindings, null);
+        expect('{');
+        if (peek() == '}') {
+            this.pos++;
+            return true;
+        }
+        do {
+            readString();
+            // bindings of variables missing from the head are ignored
+            final int index = indexOfVariable();
+            expect(':');
+            final SparqlResource term = readTerm();
+            if (index != -1) {
+                bindings[index] = term;
+            }
+        } while (endOfMembers('}'));
+        return true;
+    }
+
+    /**
+     * Read the head object, adding the names of its variables to vars
+     */
+    private void readHead(List<String> vars) throws SprotocolException, IOException {
+        expect('{');
+        if (peek() == '}') {
+            this.pos++;
+            return;
+        }
+        do {
+            readString();
+            expect(':');
+            if (contentEquals("vars")) {
+                expect('[');
+                if (peek() == ']') {
+                    this.pos++;
+                } else {
+                    do {
+                        readString();
+                        vars.add(this.string.toString());
+                    } while (endOfMembers(']'));
+                }
+            } else {
+                skipValue();
+            }
+        } while (endOfMembers('}'));
+    }
+
+    /**
+     * Read the members of the results object up to the bindings array
+     *
+     * @return true if left at the start of the bindings, false if there are none
+     */
+    private boolean readToBindings() throws SprotocolException, IOException {
+        expect('{');
+        if (peek() == '}') {
+            this.pos++;
+            return false;
+        }
+        do {
+            readString();
+            expect(':');
+            if (contentEquals("bindings")) {
+                expect('[');
+                return true;
+            }
+            skipValue();
+        } while (endOfMembers('}'));
+        return false;
+    }
+
+    /**
+     * Read an RDF term object, its type, value, datatype and language may be in any order
+     */
+    private SparqlResource readTerm() throws SprotocolException, IOException {
+        String type = null;
+        String value = null;
+        char[] largeValue = null;
+        String datatype = null;
+        String lang = null;
+
+        expect('{');
+        if (peek() == '}') {
+            throw error("an RDF term with no type or value");
+        }
+        do {
+            readString();
+            expect(':');
+            if (contentEquals("type")) {
+                readString();
+                type = typeName();
+            } else if (contentEquals("value")) {
+                readString();
+                if (isLargeLiteral(this.string.length())) {
+                    largeValue = new char[this.string.length()];
+                    this.string.getChars(0, largeValue.length, largeValue, 0);
+                    // do not keep a builder as large as the literal around
+                    this.string.setLength(0);
+                    this.string.trimToSize();
+                } else {
+                    value = this.string.toString();
+                }
+            } else if (contentEquals("datatype")) {
+                readString();
+                datatype = this.string.toString();
+            } else if (contentEquals("xml:lang")) {
+                readString();
+                lang = this.string.toString();
+            } else {
+                skipValue();
+            }
+        } while (endOfMembers('}'));
+
+        if (type == null || (value == null && largeValue == null)) {
+            throw error("an RDF term without a type or a value");
+        }
+        if ("literal".equals(type) || "typed-literal".equals(type)) {
+            if (largeValue != null) {
+                return createLargeLiteral(largeValue, 0, largeValue.length, datatype, lang);
+            }
+            return createLiteral(value, datatype, lang);
+        }
+        if (value == null) {
+            value = new String(largeValue);
+        }
+        if ("uri".equals(type)) {
+            return createIRI(value);
+        }
+        if ("bnode".equals(type)) {
+            return new BNode(value);
+        }
+        throw error("unknown RDF term type '" + type + "'");
+    }
+
+    /**
+     * @return the type read into string, as a constant when it is one of the usual ones
+     */
+    private String typeName() {
+        if (contentEquals("uri")) {
+            return "uri";
+        }
+        if (contentEquals("literal")) {
+            return "literal";
+        }
+        if (contentEquals("bnode")) {
+            return "bnode";
+        }
+        return this.string.toString();
+    }
+
+    /**
+     * @return the position in the head of the variable read into string, without making a String of it
+     */
+    private int indexOfVariable() {
+        for (int i = 0; i < head.size(); i++) {
+            if (head.get(i).contentEquals(this.string)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean contentEquals(String s) {
+        return s.contentEquals(this.string);
+    }
+
+    /**
+     * Read the ',' or closing char after a member of an object or an array
+     *
+     * @return true if there is another member
+     */
+    private boolean endOfMembers(char close) throws SprotocolException, IOException {
+        final int c = peek();
+        if (c == ',') {
+            this.pos++;
+            return true;
+        }
+        if (c == close) {
+            this.pos++;
+            return false;
+        }
+        throw error(String.format("expected ',' or '%c'", close));
+    }
+
+    private boolean readBoolean() throws SprotocolException, IOException {
+        readToken();
+        if (contentEquals("true")) {
+            return true;
+        }
+        if (contentEquals("false")) {
+            return false;
+        }
+        throw error("expected a boolean");
+    }
+
+    /**
+     * Skip a value of any type, including nested objects and arrays
+     */
+    private void skipValue() throws SprotocolException, IOException {
+        final int c = peek();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            final char close = (c == '{') ? '}' : ']';
+            this.pos++;
+            if (peek() == close) {
+                this.pos++;
+                return;
+            }
+            do {
+                if (close == '}') {
+                    readString();
+                    expect(':');
+                }
+                skipValue();
+            } while (endOfMembers(close));
+        } else {
+            readToken();
+        }
+    }
+
+    /**
+     * Read a number, true, false or null into string
+     */
+    private void readToken() throws SprotocolException, IOException {
+        this.string.setLength(0);
+        if (peek() == -1) {
+            throw error("unexpected end of input");
+        }
+        while (this.pos < this.limit || fill()) {
+            final char c = this.buf[this.pos];
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                break;
+            }
+            this.string.append(c);
+            this.pos++;
+        }
+        if (this.string.length() == 0) {
+            throw error("expected a value");
+        }
+    }
+
+    /**
+     * Read a string into string, decoding its escapes
+     */
+    private void readString() throws SprotocolException, IOException {
+        expect('"');
+        final StringBuilder sb = this.string;
+        sb.setLength(0);
+        while (true) {
+            if (this.pos == this.limit && !fill()) {
+                throw error("unterminated string");
+            }
+            // copy the chars up to the next quote or escape at once
+            int end = this.pos;
+            while (end < this.limit && this.buf[end] != '"' && this.buf[end] != '\\' && this.buf[end] >= ' ') {
+                end++;
+            }
+            sb.append(this.buf, this.pos, end - this.pos);
+            this.pos = end;
+            if (end == this.limit) {
+                continue;
+            }
+
+            final char c = this.buf[this.pos++];
+            if (c == '"') {
+                return;
+            }
+            if (c != '\\') {
+                throw error("unescaped control character in a string");
+            }
+            if (this.pos == this.limit && !fill()) {
+                throw error("unterminated string");
+            }
+            final char escape = this.buf[this.pos++];
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escape);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    sb.append(readHexChar());
+                    break;
+                default:
+                    throw error("unexpected string escape '\\" + escape + "'");
+            }
+        }
+    }
+
+    /**
+     * Read the 4 hex digits of a \\u escape, surrogate pairs are two escapes which each give one char
+     */
+    private char readHexChar() throws SprotocolException, IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            if (this.pos == this.limit && !fill()) {
+                throw error("unterminated string");
+            }
+            final int digit = Character.digit(this.buf[this.pos++], 16);
+            if (digit == -1) {
+                throw error("invalid \\u escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    private void expect(char expected) throws SprotocolException, IOException {
+        if (peek() != expected) {
+            throw error(String.format("expected '%c'", expected));
+        }
+        this.pos++;
+    }
+
+    /**
+     * @return the next char which is not whitespace, without consuming it, -1 at the end of the input
+     */
+    private int peek() throws IOException {
+        while (this.pos < this.limit || fill()) {
+            final char c = this.buf[this.pos];
+            if (c == '\n') {
+                this.line++;
+            } else if (c != ' ' && c != '\t' && c != '\r' && c != '\uFEFF') {
+                return c;
+            }
+            this.pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Read more input into the buffer, once all of it has been consumed
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        final int read = this.in.read(this.buf, 0, this.buf.length);
+        this.pos = 0;
+        this.limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    private SprotocolException error(String message) {
+        return new SprotocolException(String.format("Invalid JSON results at line %d, %s", this.line, message), null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,151 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The base of the pull parsers for the SPARQL results formats
+ * 
+ * The head is read when a parser is created, the rows are then decoded one 
+ * at a time into a bindings array supplied by the caller, which is indexed 
+ * by the position of each variable in the head.
+ */
+abstract class SparqlResultsParser extends TermParser {
+
+    /**
+     * @return the variables of the result, empty for an ASK result
+     */
+    abstract SelectResultHead getHead();
+
+    /**
+     * @return true if the response is the result of an ASK query
+     */
+    boolean isBooleanResult() {
+        return false;
+    }
+
+    /**
+     * @return the answer of an ASK query
+     */
+    boolean getBooleanResult() {
+        throw new IllegalStateException("Not the result of an ASK query");
+    }
+
+    /**
+     * Reuse the term of the previous row when a column repeats it, rather than
+     * create an equal one, for the parsers which can tell cheaply. Terms are
+     * immutable, so rows sharing them is safe. Off by default.
+     */
+    void setReuseRepeatedTerms(boolean reuseRepeatedTerms) {
+        // nothing to reuse by default
+    }
+
+    /**
+     * Parse each column the way the schema hints it is bound, for the parsers which
+     * have to find out what kind of term each value is
+     *
+     * @param schema hints of the variables, may be 'null' for none
+     */
+    void setSchema(ResultSchema schema) {
+        // nothing to find out by default
+    }
+
+    /**
+     * Decode the next result row
+     * 
+     * @param bindings array of at least getHead().size(), unbound variables are set to 'null'
+     * @return false if there are no more rows, in which case bindings is left untouched
+     * @throws SprotocolException on a parse error
+     * @throws IOException if the underlying reader fails
+     */
+    boolean nextRow(SparqlResource[] bindings) throws SprotocolException, IOException {
+        if (!readRow(bindings)) {
+            return false;
+        }
+        if (null != limiter) {
+            limiter.countRow();
+        }
+        return true;
+    }
+
+    /**
+     * Decode the next result row, see nextRow, which also counts it against the limits
+     */
+    abstract boolean readRow(SparqlResource[] bindings) throws SprotocolException, IOException;
+
+    /**
+     * Drive a ResultHandler with the whole result, then close this parser
+     * 
+     * @throws SprotocolException on a parse error, or if thrown by the handler
+     * @throws IOException if the underlying reader fails
+     */
+    void parse(ResultHandler handler) throws SprotocolException, IOException {
+        try {
+            final SelectResultHead head = getHead();
+            handler.startResult(head);
+            if (isBooleanResult()) {
+                handler.handleBoolean(getBooleanResult());
+            } else {
+                final SparqlResource[] bindings = new SparqlResource[head.size()];
+                while (nextRow(bindings)) {
+                    handler.handleRow(bindings);
+                }
+            }
+            handler.endResult();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Create a parser for the given SPARQL results mime-type
+     * 
+     * @param interner used to create the terms of the result, may be 'null'
+     * @param lazyLiterals whether the values of literals are decoded when first asked for, see setLazyLiterals
+     * @param largeLiteralThreshold the length above which the values of literals are kept as chars, see setLargeLiteralThreshold
+     * @throws SprotocolException if there is no parser for the mime-type, or the head can not be parsed
+     * @throws IOException
+     */
+    static SparqlResultsParser create(String contentType, Reader in, TermInterner interner, boolean lazyLiterals, int largeLiteralThreshold) throws SprotocolException, IOException {
+        final SparqlResultsParser parser;
+        if (SprotocolConstants.SPARQL_RESULTS_XML_MIME.equals(contentType)) {
+            parser = new SparqlResultsXmlParser(in);
+        } else if (SprotocolConstants.SPARQL_RESULTS_TSV_MIME.equals(contentType)) {
+            parser = new SparqlResultsTsvParser(in);
+        } else if (SprotocolConstants.SPARQL_RESULTS_JSN_MIME.equals(contentType)) {
+            parser = new SparqlResultsJsonParser(in);
+        } else if (SprotocolConstants.SPARQL_RESULTS_CSV_MIME.equals(contentType)) {
+            parser = new SparqlResultsCsvParser(in);
+        } else {
+            in.close();
+            throw new SprotocolException("No SPARQL results parser defined for " + contentType, null);
+        }
+        parser.setTermInterner(interner);
+        parser.setLazyLiterals(lazyLiterals);
+        parser.setLargeLiteralThreshold(largeLiteralThreshold);
+        return parser;
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
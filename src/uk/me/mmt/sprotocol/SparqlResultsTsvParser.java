@@ -0,0 +1,598 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A pull parser of SPARQL TSV (Tab Separated Values) results, one row at a time.
+ *
+ * Rows are scanned straight out of a char buffer, in a single pass which records
+ * where each term starts and ends and whether it contains a backslash. The pass jumps
+ * from delimiter to delimiter with a DelimiterScanner. Strings are
+ * only created for the final values of the terms, and literals are only unescaped
+ * when they contain a backslash.
+ *
+ * With lazy literals, literals keep the slice of the buffer holding their value, and
+ * only create the String (unescaping it if needed) on their first getValue(). Large
+ * literals also keep the slice of the buffer, so as not to copy it. A buffer referred to
+ * by literals is never overwritten, a new one is allocated when more input is read.
+ */
+final class SparqlResultsTsvParser extends SparqlResultsParser {
+    private static final int BUFFER_SIZE = 16384;
+    private static final DelimiterScanner TSV_DELIMITERS = DelimiterScanner.create('\t', '\n', '\\');
+    // longer terms are not compared with the previous row, see setReuseRepeatedTerms
+    private static final int MAX_REPEATED_TERM_LENGTH = 256;
+
+    private final Reader in;
+    private final SelectResultHead variables;
+
+    private char[] buf;
+    // start of the next row to scan
+    private int pos;
+    // end of the chars available in buf
+    private int limit;
+
+    // the terms of the last row scanned
+    private int[] termStarts = new int[8];
+    private int[] termEnds = new int[8];
+    private boolean[] termEscaped = new boolean[8];
+
+    private String lastDatatype;
+    private String lastLanguage;
+
+    // with repeated terms reused, the text and the term of each column in the previous row
+    private boolean reuseRepeatedTerms;
+    private char[][] previousText;
+    private int[] previousLength;
+    private SparqlResource[] previousTerm;
+
+    // with a schema, the hinted type and datatype of each column, see getHintedTerm
+    private TermType[] columnTypes;
+    private String[] columnDatatypes;
+
+    /**
+     * Create a parser, reading the variables line straight away.
+     *
+     * @param in Reader over the TSV as returned by SPARQL server
+     * @throws SprotocolException if TSV header line cannot be parsed
+     * @throws IOException if the reader fails
+     */
+    SparqlResultsTsvParser(Reader in) throws SprotocolException, IOException {
+        this.in = in;
+        this.buf = new char[BUFFER_SIZE];
+
+        // get first line listing variables
+        final int terms = scanRow();
+
+        if (terms == -1) {
+            throw new SprotocolException("No variables line found in TSV output", null);
+        }
+
+        final List<String> varList = new ArrayList<String>(terms);
+        if (!isEmptyRow(terms)) {
+            for (int i = 0; i < terms; i++) {
+                final int len = this.termEnds[i] - this.termStarts[i];
+                if (len < 2) {
+                    throw new SprotocolException("Could not parse variables line: " + rowAsString(terms), null);
+                }
+                // strip leading ? or $ from variable names
+                varList.add(new String(this.buf, this.termStarts[i] + 1, len - 1));
+            }
+        }
+
+        this.variables = new SelectResultHead(varList);
+    }
+
+    /**
+     * Create a parser over rows of TSV held in memory, without a variables line.
+     *
+     * @param variables The variables of the rows
+     * @param buf Buffer holding the rows
+     * @param start Index of the start of the first row
+     * @param end Index after the end of the last row
+     */
+    SparqlResultsTsvParser(SelectResultHead variables, char[] buf, int start, int end) {
+        this.in = null;
+        this.variables = variables;
+        this.buf = buf;
+        this.pos = start;
+        this.limit = end;
+    }
+
+    @Override
+    SelectResultHead getHead() {
+        return this.variables;
+    }
+
+    /**
+     * @return true if there is at least one more row to parse
+     * @throws IOException if the reader fails
+     */
+    boolean hasNextRow() throws IOException {
+        return this.pos < this.limit || fill();
+    }
+
+    /**
+     * The text of each term is compared with that of the same column in the previous row,
+     * for terms up to MAX_REPEATED_TERM_LENGTH chars
+     */
+    @Override
+    void setReuseRepeatedTerms(boolean reuseRepeatedTerms) {
+        this.reuseRepeatedTerms = reuseRepeatedTerms;
+        if (reuseRepeatedTerms && this.previousTerm == null) {
+            final int columns = this.variables.size();
+            this.previousText = new char[columns][];
+            this.previousLength = new int[columns];
+            this.previousTerm = new SparqlResource[columns];
+        }
+    }
+
+    @Override
+    void setSchema(ResultSchema schema) {
+        if (schema == null) {
+            this.columnTypes = null;
+            this.columnDatatypes = null;
+            return;
+        }
+        final int columns = this.variables.size();
+        this.columnTypes = new TermType[columns];
+        this.columnDatatypes = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            this.columnTypes[i] = schema.getType(this.variables.get(i));
+            this.columnDatatypes[i] = schema.getDatatype(this.variables.get(i));
+        }
+    }
+
+    /**
+     * Parse the next row of TSV results into a bindings array.
+     *
+     * The row is consumed even if one of its terms cannot be parsed.
+     *
+     * @param bindings Array to fill, indexed as the variables
+     * @return false if there are no more rows
+     * @throws SprotocolException on parse error
+     * @throws IOException if the reader fails
+     */
+    @Override
+    boolean readRow(SparqlResource[] bindings) throws SprotocolException, IOException {
+        final int terms = scanRow();
+        if (terms == -1) {
+            return false;
+        }
+
+        if (terms > this.variables.size() && !isEmptyRow(terms)) {
+            throw new SprotocolException("More terms than variables in TSV line: " + rowAsString(terms), null);
+        }
+
+        Arrays.fill(bindings, null);
+        for (int i = 0; i < terms && i < bindings.length; i++) {
+            if (this.reuseRepeatedTerms) {
+                bindings[i] = getRepeatedTerm(i, this.termStarts[i], this.termEnds[i], this.termEscaped[i]);
+            } else {
+                bindings[i] = getTerm(i, this.termStarts[i], this.termEnds[i], this.termEscaped[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scan a row, recording the boundaries of its terms, in a single pass over the buffer.
+     *
+     * @return the number of terms in the row, or -1 if there are no more rows
+     * @throws IOException if the reader fails
+     */
+    private int scanRow() throws IOException {
+        if (this.pos >= this.limit && !fill()) {
+            return -1;
+        }
+
+        int terms = 0;
+        int termStart = this.pos;
+        boolean escaped = false;
+        int i = this.pos;
+        while (true) {
+            if (i == this.limit) {
+                // refilling may move the row to the start of the buffer
+                final int before = this.pos;
+                final boolean more = fill();
+                final int shift = before - this.pos;
+                i -= shift;
+                termStart -= shift;
+                for (int t = 0; t < terms; t++) {
+                    this.termStarts[t] -= shift;
+                    this.termEnds[t] -= shift;
+                }
+
+                if (!more) {
+                    // last row, without a newline
+                    addTerm(terms++, termStart, i, escaped);
+                    this.pos = i;
+                    return terms;
+                }
+            }
+
+            i = TSV_DELIMITERS.indexOf(this.buf, i, this.limit);
+            if (i == this.limit) {
+                continue;
+            }
+
+            final char c = this.buf[i];
+            if (c == '\t') {
+                addTerm(terms++, termStart, i, escaped);
+                termStart = i + 1;
+                escaped = false;
+            } else if (c == '\n') {
+                final int termEnd = (i > termStart && this.buf[i - 1] == '\r') ? i - 1 : i;
+                addTerm(terms++, termStart, termEnd, escaped);
+                this.pos = i + 1;
+                return terms;
+            } else if (c == '\\') {
+                escaped = true;
+            }
+            i++;
+        }
+    }
+
+    private void addTerm(int term, int start, int end, boolean escaped) {
+        if (term == this.termStarts.length) {
+            this.termStarts = Arrays.copyOf(this.termStarts, term * 2);
+            this.termEnds = Arrays.copyOf(this.termEnds, term * 2);
+            this.termEscaped = Arrays.copyOf(this.termEscaped, term * 2);
+        }
+        this.termStarts[term] = start;
+        this.termEnds[term] = end;
+        this.termEscaped[term] = escaped;
+    }
+
+    /**
+     * Read more chars, first moving the unscanned ones to the start of the buffer
+     * (or growing it if it is full of them), into a new buffer if literals refer to this one.
+     *
+     * @return false at the end of the input
+     * @throws IOException if the reader fails
+     */
+    private boolean fill() throws IOException {
+        if (null == this.in) {
+            return false;
+        }
+
+        if (this.pos > 0) {
+            // literals may still refer to the chars before pos
+            final char[] target = compactTarget(this.buf, this.limit - this.pos, BUFFER_SIZE);
+            System.arraycopy(this.buf, this.pos, target, 0, this.limit - this.pos);
+            this.buf = target;
+            this.limit -= this.pos;
+            this.pos = 0;
+        } else if (this.limit == this.buf.length) {
+            this.buf = Arrays.copyOf(this.buf, this.buf.length * 2);
+            this.bufferShared = false;
+        }
+
+        final int read = this.in.read(this.buf, this.limit, this.buf.length - this.limit);
+        if (read == -1) {
+            return false;
+        }
+        this.limit += read;
+        return true;
+    }
+
+    /**
+     * A row with a single empty term, e.g. the variables line when there are no variables
+     */
+    private boolean isEmptyRow(int terms) {
+        return terms == 1 && this.termStarts[0] == this.termEnds[0];
+    }
+
+    private String rowAsString(int terms) {
+        return new String(this.buf, this.termStarts[0], this.termEnds[terms - 1] - this.termStarts[0]);
+    }
+
+    /**
+     * The term of a column, the one of the previous row if its text is the same
+     */
+    private SparqlResource getRepeatedTerm(int column, int start, int end, boolean escaped) throws SprotocolException {
+        final int length = end - start;
+        if (length > MAX_REPEATED_TERM_LENGTH) {
+            this.previousTerm[column] = null;
+            return getTerm(column, start, end, escaped);
+        }
+
+        char[] text = this.previousText[column];
+        if (text != null && this.previousLength[column] == length && this.previousTerm[column] != null
+                && Arrays.equals(text, 0, length, this.buf, start, end)) {
+            return this.previousTerm[column];
+        }
+
+        final SparqlResource term = getTerm(column, start, end, escaped);
+        if (text == null || text.length < length) {
+            text = new char[Math.max(length, 16)];
+            this.previousText[column] = text;
+        }
+        System.arraycopy(this.buf, start, text, 0, length);
+        this.previousLength[column] = length;
+        this.previousTerm[column] = term;
+        return term;
+    }
+
+    /**
+     * The term of a column, the way its hint says if it has one, otherwise or if the
+     * term does not match the hint, found out from the term itself
+     */
+    private SparqlResource getTerm(int column, int start, int end, boolean escaped) throws SprotocolException {
+        if (this.columnTypes != null && this.columnTypes[column] != null && end > start) {
+            final SparqlResource term = getHintedTerm(this.columnTypes[column], this.columnDatatypes[column], start, end, escaped);
+            if (term != null) {
+                return term;
+            }
+        }
+        return getTsvTermAsResource(start, end, escaped);
+    }
+
+    /**
+     * Parse a non empty term as the kind of term it is hinted to be
+     *
+     * @return 'null' if the term does not match the hint
+     */
+    private SparqlResource getHintedTerm(TermType type, String datatype, int start, int end, boolean escaped) throws SprotocolException {
+        final int termLen = end - start;
+        final char first = this.buf[start];
+        final char last = this.buf[end-1];
+
+        switch (type) {
+            case IRI:
+                if (first == '<' && last == '>' && termLen > 1) {
+                    return createIRI(new String(this.buf, start+1, termLen-2));
+                }
+                return null;
+            case BNODE:
+                if (first == '_' && termLen > 2 && this.buf[start+1] == ':') {
+                    return new BNode(new String(this.buf, start+2, termLen-2));
+                }
+                return null;
+            case LITERAL:
+                if (first != '"' && first != '\'') {
+                    return null;
+                }
+                if (last == first && termLen > 1) {
+                    return sliceLiteral(this.buf, start+1, end-1, escaped, null, null);
+                }
+                // only the language tag is scanned back over, to the '@' after the closing quote
+                int atPos = end - 1;
+                while (atPos > start && isLanguageChar(this.buf[atPos])) {
+                    atPos--;
+                }
+                if (atPos > start + 1 && atPos < end - 1 && this.buf[atPos] == '@' && this.buf[atPos-1] == first) {
+                    this.lastLanguage = sliceAsString(this.lastLanguage, this.buf, atPos+1, end);
+                    return sliceLiteral(this.buf, start+1, atPos-1, escaped, null, this.lastLanguage);
+                }
+                return null;
+            case TYPED_LITERAL:
+                if (first == '"' || first == '\'') {
+                    // the datatype is compared in place, rather than searched for
+                    final int caretPos = end - datatype.length() - 4;
+                    if (caretPos - 1 > start && last == '>' && this.buf[caretPos-1] == first && this.buf[caretPos] == '^'
+                            && this.buf[caretPos+1] == '^' && this.buf[caretPos+2] == '<' && sliceEquals(datatype, this.buf, caretPos+3, end-1)) {
+                        return sliceLiteral(this.buf, start+1, caretPos-1, escaped, datatype, null);
+                    }
+                    return null;
+                }
+                return getHintedAbbreviation(datatype, start, end);
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isLanguageChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-';
+    }
+
+    /**
+     * Parse an abbreviated number or boolean as the datatype it is hinted to be,
+     * without first looking for the chars which tell the datatype
+     *
+     * @return 'null' if the term is not an abbreviation of that datatype
+     */
+    private SparqlResource getHintedAbbreviation(String datatype, int start, int end) {
+        if (SprotocolConstants.XSD_BOOLEAN.equals(datatype)) {
+            if (sliceEquals("true", this.buf, start, end)) {
+                return createLiteral("true", SprotocolConstants.XSD_BOOLEAN, null, Boolean.TRUE);
+            }
+            if (sliceEquals("false", this.buf, start, end)) {
+                return createLiteral("false", SprotocolConstants.XSD_BOOLEAN, null, Boolean.FALSE);
+            }
+            return null;
+        }
+
+        final boolean signed = this.buf[start] == '+' || this.buf[start] == '-';
+        final int digitsStart = signed ? start + 1 : start;
+        if (digitsStart == end) {
+            return null;
+        }
+
+        if (SprotocolConstants.XSD_INTEGER.equals(datatype)) {
+            // parsed straight from the buffer while it fits in a long
+            long value = 0;
+            for (int i = digitsStart; i < end; i++) {
+                final char c = this.buf[i];
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+            final String term = new String(this.buf, start, end - start);
+            if (end - digitsStart > 18) {
+                return createLiteral(term, datatype, null, Literal.parseValue(term, datatype));
+            }
+            return createLiteral(term, datatype, null, Long.valueOf(this.buf[start] == '-' ? -value : value));
+        }
+
+        if (SprotocolConstants.XSD_DECIMAL.equals(datatype)) {
+            int dots = 0;
+            for (int i = digitsStart; i < end; i++) {
+                final char c = this.buf[i];
+                if (c == '.') {
+                    dots++;
+                } else if (c < '0' || c > '9') {
+                    return null;
+                }
+            }
+            if (dots != 1 || end - digitsStart == 1) {
+                return null;
+            }
+            final String term = new String(this.buf, start, end - start);
+            return createLiteral(term, datatype, null, new BigDecimal(term));
+        }
+
+        if (SprotocolConstants.XSD_DOUBLE.equals(datatype)) {
+            boolean exponent = false;
+            for (int i = digitsStart; i < end; i++) {
+                final char c = this.buf[i];
+                if (c == 'e' || c == 'E') {
+                    exponent = true;
+                } else if ((c < '0' || c > '9') && c != '.' && c != '+' && c != '-') {
+                    return null;
+                }
+            }
+            if (!exponent) {
+                return null;
+            }
+            final String term = new String(this.buf, start, end - start);
+            try {
+                return createLiteral(term, datatype, null, Double.valueOf(term));
+            } catch (final NumberFormatException e) {
+                // left to the generic parse to report
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Parse a single TSV term into a resource.
+     *
+     * Term definitions defined in http://www.w3.org/TeamSubmission/turtle/ .
+     *
+     * @param start Index of the term in the buffer
+     * @param end Index after the end of the term
+     * @param escaped Whether the term contains a backslash
+     * @return Resource matching the term type parsed, or null if term is empty (unbound)
+     * @throws SprotocolException if term could not be parsed
+     */
+    private SparqlResource getTsvTermAsResource(int start, int end, boolean escaped) throws SprotocolException {
+        final int termLen = end - start;
+
+        // no variable bound
+        if (termLen == 0) {
+            return null;
+        }
+
+        final char first = this.buf[start];
+        final char last = this.buf[end-1];
+
+        // URI, e.g. <http://example.org/foo>
+        if (first == '<' && last == '>' && termLen > 1) {
+            return createIRI(new String(this.buf, start+1, termLen-2));
+        }
+
+        // Blank node, e.g. _:bnodeId
+        if (first == '_' && termLen > 1 && this.buf[start+1] == ':') {
+            return new BNode(new String(this.buf, start+2, termLen-2));
+        }
+
+        // Literal, e.g. "foo", 'bar...'
+        if ((first == '"' || first == '\'') && last == first && termLen > 1) {
+            return sliceLiteral(this.buf, start+1, end-1, escaped, null, null);
+        }
+
+        // Typed literal, e.g. "foo"^^<bar>, 'foo'^^<bob>
+        if (last == '>') {
+            int caretPos = end - 2;
+            while (caretPos > start && !(this.buf[caretPos] == '^' && this.buf[caretPos-1] == '^')) {
+                caretPos--;
+            }
+            caretPos--;
+            if (caretPos < start + 2 || this.buf[caretPos+2] != '<') {
+                throw new SprotocolException("Invalid typed literal term: " + new String(this.buf, start, termLen), null);
+            }
+
+            this.lastDatatype = sliceAsString(this.lastDatatype, this.buf, caretPos+3, end-1);
+            return sliceLiteral(this.buf, start+1, caretPos-1, escaped, this.lastDatatype, null);
+        }
+
+        // Literal with language, e.g. "foo"@en
+        int atPos = end - 1;
+        while (atPos >= start && this.buf[atPos] != '@') {
+            atPos--;
+        }
+        if (atPos >= start + 2) {
+            this.lastLanguage = sliceAsString(this.lastLanguage, this.buf, atPos+1, end);
+            return sliceLiteral(this.buf, start+1, atPos-1, escaped, null, this.lastLanguage);
+        }
+
+        // else look for abbreviated data types
+
+        // true or false
+        if (sliceEquals("true", this.buf, start, end)) {
+            return createLiteral("true", SprotocolConstants.XSD_BOOLEAN, null, Boolean.TRUE);
+        }
+        if (sliceEquals("false", this.buf, start, end)) {
+            return createLiteral("false", SprotocolConstants.XSD_BOOLEAN, null, Boolean.FALSE);
+        }
+
+        // numbers are parsed once here, and the value kept by the Literal
+        String dt = SprotocolConstants.XSD_INTEGER;
+        for (int i = start; i < end; i++) {
+            final char c = this.buf[i];
+            if (c == 'e' || c == 'E') {
+                // should be xsd:double, e.g. 1.0e6
+                dt = SprotocolConstants.XSD_DOUBLE;
+                break;
+            }
+            if (c == '.') {
+                // should be xsd:decimal, e.g. 1.5, unless an exponent follows
+                dt = SprotocolConstants.XSD_DECIMAL;
+            }
+        }
+
+        final String term = new String(this.buf, start, termLen);
+        try {
+            return createLiteral(term, dt, null, Literal.parseValue(term, dt));
+        } catch (final IllegalArgumentException e) {
+            throw new SprotocolException("Unable to parse term: " + term, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.in != null) {
+            this.in.close();
+        }
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,235 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A streaming (StAX) parser of the SPARQL-RESULTS XML format
+ * 
+ * Unlike a DOM parse only the current result is ever held in memory.
+ */
+final class SparqlResultsXmlParser extends SparqlResultsParser {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    private static final int TEXT_SIZE = 256;
+
+    private final Reader in;
+    private final XMLStreamReader xml;
+    private final SelectResultHead head;
+    private boolean booleanResult;
+    private boolean isBoolean;
+    private boolean finished;
+    // the text of the literal being read
+    private char[] text = new char[TEXT_SIZE];
+
+    SparqlResultsXmlParser(Reader in) throws SprotocolException {
+        this.in = in;
+        try {
+            this.xml = XML_INPUT_FACTORY.createXMLStreamReader(in);
+
+            final List<String> vars = new ArrayList<String>();
+            // read the head, up to the start of the results or the boolean
+            boolean found = false;
+            while (!found && xml.hasNext()) {
+                if (xml.next() != XMLStreamReader.START_ELEMENT) {
+                    continue;
+                }
+
+                final String name = xml.getLocalName();
+                if ("variable".equals(name)) {
+                    vars.add(xml.getAttributeValue(null, "name"));
+                } else if ("boolean".equals(name)) {
+                    this.isBoolean = true;
+                    this.booleanResult = "true".equals(xml.getElementText().trim());
+                    found = true;
+                } else if ("results".equals(name)) {
+                    found = true;
+                }
+            }
+            this.finished = !found || this.isBoolean;
+
+            this.head = new SelectResultHead(vars);
+        } catch (final XMLStreamException e) {
+            throw new SprotocolException("Error parsing XML returned via SPARQL Endpoint", e);
+        }
+    }
+
+    @Override
+    SelectResultHead getHead() {
+        return head;
+    }
+
+    @Override
+    boolean isBooleanResult() {
+        return isBoolean;
+    }
+
+    @Override
+    boolean getBooleanResult() {
+        if (!isBoolean) {
+            return super.getBooleanResult();
+        }
+        return booleanResult;
+    }
+
+    @Override
+    boolean readRow(SparqlResource[] bindings) throws SprotocolException {
+        if (finished) {
+            return false;
+        }
+
+        try {
+            while (xml.hasNext()) {
+                final int event = xml.next();
+                if (event == XMLStreamReader.START_ELEMENT && "result".equals(xml.getLocalName())) {
+                    Arrays.fill(bindings, null);
+                    parseResult(bindings);
+                    return true;
+                }
+                if (event == XMLStreamReader.END_ELEMENT && "results".equals(xml.getLocalName())) {
+                    break;
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw new SprotocolException("Error parsing XML returned via SPARQL Endpoint", e);
+        }
+
+        finished = true;
+        return false;
+    }
+
+    /**
+     * Parse the bindings of a single result element, the reader is left on its end element
+     */
+    private void parseResult(SparqlResource[] bindings) throws XMLStreamException {
+        int index = -1;
+        while (xml.hasNext()) {
+            final int event = xml.next();
+            if (event == XMLStreamReader.END_ELEMENT && "result".equals(xml.getLocalName())) {
+                return;
+            }
+            if (event != XMLStreamReader.START_ELEMENT) {
+                continue;
+            }
+
+            final String name = xml.getLocalName();
+            if ("binding".equals(name)) {
+                // bindings of variables missing from the head are ignored
+                index = head.indexOf(xml.getAttributeValue(null, "name"));
+            } else if ("uri".equals(name)) {
+                final String iri = xml.getElementText();
+                if (index != -1) {
+                    bindings[index] = createIRI(iri);
+                }
+            } else if ("bnode".equals(name)) {
+                final String bnodeId = xml.getElementText();
+                if (index != -1) {
+                    bindings[index] = new BNode(bnodeId);
+                }
+            } else if ("literal".equals(name)) {
+                final String datatype = emptyToNull(xml.getAttributeValue(null, "datatype"));
+                final String lang = emptyToNull(xml.getAttributeValue(XMLConstants.XML_NS_URI, "lang"));
+                final Literal literal = readLiteral(datatype, lang);
+                if (index != -1) {
+                    bindings[index] = literal;
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the text of a literal element, as getElementText does, but
+     * without making a String of it if it is large, the reader is left on its end element
+     */
+    private Literal readLiteral(String datatype, String lang) throws XMLStreamException {
+        int length = 0;
+        while (true) {
+            final int event = xml.next();
+            if (event == XMLStreamReader.END_ELEMENT) {
+                break;
+            }
+            if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA || event == XMLStreamReader.SPACE) {
+                final int textLength = xml.getTextLength();
+                ensureText(length + textLength);
+                System.arraycopy(xml.getTextCharacters(), xml.getTextStart(), text, length, textLength);
+                length += textLength;
+            } else if (event == XMLStreamReader.ENTITY_REFERENCE) {
+                final String entity = xml.getText();
+                ensureText(length + entity.length());
+                entity.getChars(0, entity.length(), text, length);
+                length += entity.length();
+            } else if (event == XMLStreamReader.START_ELEMENT) {
+                throw new XMLStreamException("Unexpected element in literal", xml.getLocation());
+            }
+        }
+
+        if (isLargeLiteral(length)) {
+            final char[] value = Arrays.copyOf(text, length);
+            // do not keep a buffer as large as the literal around
+            text = new char[TEXT_SIZE];
+            return createLargeLiteral(value, 0, length, datatype, lang);
+        }
+        return createLiteral(new String(text, 0, length), datatype, lang);
+    }
+
+    private void ensureText(int length) {
+        if (length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, length));
+        }
+    }
+
+    private static String emptyToNull(String attribute) {
+        if (attribute == null || attribute.length() == 0) {
+            return null;
+        }
+        return attribute;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException("Error closing XML stream", e);
+        } finally {
+            in.close();
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
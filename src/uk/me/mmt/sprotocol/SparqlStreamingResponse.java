@@ -0,0 +1,156 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The response to a SPARQL request, with its body left on the connection to be read as a stream
+ */
+final class SparqlStreamingResponse implements Closeable {
+    private static final int BUFFER_SIZE = 16384;
+    // the largest array the JVM can be relied on to allocate
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private final Reader reader;
+    private final String contentType;
+    private final String charset;
+    private final String rawContentType;
+    private final ResultLimiter limiter;
+
+    SparqlStreamingResponse(Reader reader, String contentType, String charset, String rawContentType, ResultLimiter limiter) {
+        this.reader = reader;
+        this.contentType = contentType;
+        this.charset = charset;
+        this.rawContentType = rawContentType;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @return Reader over the response body, closing it closes the response
+     */
+    Reader getReader() {
+        return reader;
+    }
+
+    /**
+     * @return MIME type part of Content-type header returned by SPARQL server
+     */
+    String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return Charset part of Content-type header
+     */
+    String getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return Full Content-type header returned by SPARQL server
+     */
+    String getRawContentType() {
+        return rawContentType;
+    }
+
+    /**
+     * @return the limiter of the request, for the parsers of the body, 'null' if it has no limits
+     */
+    ResultLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Read the whole response body into memory, then close the response
+     * 
+     * @return CharBuffer over the start of an array holding the body
+     * @throws SprotocolException if the body is too large for an array
+     * @throws IOException
+     */
+    CharBuffer readFully() throws SprotocolException, IOException {
+        try {
+            char[] buf = new char[BUFFER_SIZE];
+            int length = 0;
+            while (true) {
+                if (length == buf.length) {
+                    if (length == MAX_BUFFER_SIZE) {
+                        throw new SprotocolException("The response is too large to be read into memory, spool it to a file "
+                                + "(see SparqlQueryProtocolClient.setSpoolParallelGraphs) or parse it as it is read", null);
+                    }
+                    buf = Arrays.copyOf(buf, (int) Math.min(buf.length * 2L, MAX_BUFFER_SIZE));
+                }
+                final int read = reader.read(buf, length, buf.length - length);
+                if (read == -1) {
+                    return CharBuffer.wrap(buf, 0, length);
+                }
+                length += read;
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Write the whole response body to a temporary file, in UTF-8, then close the response
+     * 
+     * @return the file, which the caller must delete
+     * @throws IOException if the body can not be read or written, in which case the file is deleted
+     */
+    Path spoolToFile() throws IOException {
+        final Path file = Files.createTempFile("sprotocol-graph", ".nt");
+        boolean written = false;
+        try {
+            final Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            try {
+                final char[] buf = new char[BUFFER_SIZE];
+                int read;
+                while ((read = reader.read(buf, 0, buf.length)) != -1) {
+                    out.write(buf, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+            written = true;
+            return file;
+        } finally {
+            close();
+            if (!written) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
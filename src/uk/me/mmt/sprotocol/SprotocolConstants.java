@@ -37,6 +37,7 @@ public class SprotocolConstants {
     public static final String RDF_XML_MIME = "application/rdf+xml";
     public static final String RDF_TTL_MIME = "text/turtle";
     public static final String RDF_NT_MIME = "text/plain";
+    public static final String RDF_NTRIPLES_MIME = "application/n-triples";
 
 
     //Known SPARQL response mime-types
@@ -50,6 +51,7 @@ public class SprotocolConstants {
         s.add(RDF_XML_MIME);
         s.add(RDF_TTL_MIME);
         s.add(RDF_NT_MIME);
+        s.add(RDF_NTRIPLES_MIME);
         SPARQL_MIME_TYPES = Collections.unmodifiableList(s);
     };
 
@@ -71,9 +73,21 @@ public class SprotocolConstants {
         r.add(RDF_XML_MIME);
         r.add(RDF_TTL_MIME);
         r.add(RDF_NT_MIME);
+        r.add(RDF_NTRIPLES_MIME);
         RDF_MIME_TYPES = Collections.unmodifiableList(r);
     }
 
+    //RDF vocabulary
+    public static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    //XML Schema datatypes
+    public static final String XSD_NS = "http://www.w3.org/2001/XMLSchema#";
+    public static final String XSD_BOOLEAN = XSD_NS + "boolean";
+    public static final String XSD_INTEGER = XSD_NS + "integer";
+    public static final String XSD_DOUBLE = XSD_NS + "double";
+    public static final String XSD_DECIMAL = XSD_NS + "decimal";
+    public static final String XSD_STRING = XSD_NS + "string";
+
     //Timeout settings
     public static final int TIMEOUT = 10000;
     
@@ -82,6 +96,17 @@ public class SprotocolConstants {
     
     //Sprotocol's Accept Header
     public static final String ACCEPT_HEADER = SPARQL_RESULTS_XML_MIME+", "+SPARQL_RESULTS_TSV_MIME+", "+RDF_XML_MIME+", "+RDF_TTL_MIME;
+
+    //Accept Headers sent by default for each form of query, see QueryForm, only the formats sprotocol parses
+    public static final String SELECT_ACCEPT_HEADER = SPARQL_RESULTS_XML_MIME+", "+SPARQL_RESULTS_TSV_MIME+";q=0.9";
+    public static final String ASK_ACCEPT_HEADER = SPARQL_RESULTS_XML_MIME;
+    public static final String GRAPH_ACCEPT_HEADER = RDF_XML_MIME+", "+RDF_TTL_MIME;
+
+    //Accept Header for CONSTRUCT and DESCRIBE queries parsed into triples, the formats sprotocol can parse
+    public static final String TRIPLES_ACCEPT_HEADER = RDF_TTL_MIME+", "+RDF_NTRIPLES_MIME+";q=0.9, "+RDF_NT_MIME+";q=0.8, "+RDF_XML_MIME+";q=0.7";
+
+    //Accept Header for CONSTRUCT and DESCRIBE queries parsed in parallel, which only N-Triples can be
+    public static final String PARALLEL_TRIPLES_ACCEPT_HEADER = RDF_NTRIPLES_MIME+", "+RDF_NT_MIME+";q=0.9, "+RDF_TTL_MIME+";q=0.8, "+RDF_XML_MIME+";q=0.7";
 }
 
 /* vi:set ts=8 sts=4 sw=4 et: */
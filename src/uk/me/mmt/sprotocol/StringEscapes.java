@@ -0,0 +1,137 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * The backslash escapes of Turtle strings, also used by the terms of SPARQL TSV results:
+ * \t \b \n \r \f \" \' \\ and the 4 and 8 digit hex escapes of code points (u and U)
+ */
+final class StringEscapes {
+
+    private StringEscapes() {
+    }
+
+    /**
+     * @param buf Buffer holding the escaped string
+     * @param start Index of the string in the buffer
+     * @param end Index after the end of the string
+     * @param sb Used to build the result, its content is discarded
+     * @return The string with its escape sequences converted
+     * @throws IllegalArgumentException on an unexpected escape sequence
+     */
+    static String unescape(char[] buf, int start, int end, StringBuilder sb) {
+        sb.setLength(0);
+        decode(buf, start, end, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append a string to a StringBuilder, with its escape sequences converted
+     *
+     * @throws IllegalArgumentException on an unexpected escape sequence
+     */
+    static void append(char[] buf, int start, int end, StringBuilder sb) {
+        decode(buf, start, end, sb);
+    }
+
+    /**
+     * Check the escape sequences of a string, without converting them
+     *
+     * @throws IllegalArgumentException on an unexpected escape sequence
+     */
+    static void validate(char[] buf, int start, int end) {
+        decode(buf, start, end, null);
+    }
+
+    private static void decode(char[] buf, int start, int end, StringBuilder sb) {
+        int i = start;
+        while (i < end) {
+            final char c = buf[i++];
+            if (c != '\\') {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (i == end) {
+                throw new IllegalArgumentException("Unexpected string escape at the end of: " + new String(buf, start, end - start));
+            }
+
+            final char escaped = buf[i++];
+            final int codePoint;
+            switch (escaped) {
+            case 't':
+                codePoint = '\t';
+                break;
+            case 'b':
+                codePoint = '\b';
+                break;
+            case 'n':
+                codePoint = '\n';
+                break;
+            case 'r':
+                codePoint = '\r';
+                break;
+            case 'f':
+                codePoint = '\f';
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+                codePoint = escaped;
+                break;
+            case 'u':
+                codePoint = hex(buf, i, 4, start, end);
+                i += 4;
+                break;
+            case 'U':
+                codePoint = hex(buf, i, 8, start, end);
+                i += 8;
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected string escape in: " + new String(buf, start, end - start));
+            }
+            if (sb != null) {
+                sb.appendCodePoint(codePoint);
+            }
+        }
+    }
+
+    private static int hex(char[] buf, int from, int digits, int start, int end) {
+        if (from + digits > end) {
+            throw new IllegalArgumentException("Truncated string escape in: " + new String(buf, start, end - start));
+        }
+        int codePoint = 0;
+        for (int i = from; i < from + digits; i++) {
+            final int digit = Character.digit(buf[i], 16);
+            if (digit == -1) {
+                throw new IllegalArgumentException("Invalid string escape in: " + new String(buf, start, end - start));
+            }
+            codePoint = (codePoint << 4) | digit;
+        }
+        if (!Character.isValidCodePoint(codePoint)) {
+            throw new IllegalArgumentException("Invalid code point escaped in: " + new String(buf, start, end - start));
+        }
+        return codePoint;
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,97 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A DelimiterScanner testing a long at a time, SIMD within a register (SWAR)
+ * 
+ * Each delimiter is repeated in every lane of a long. XORing a word of the buffer 
+ * with it turns matching lanes into zero lanes, which are found with the classic 
+ * (x - 0x01..) &amp; ~x &amp; 0x80.. test. The lowest flagged lane is always a real 
+ * match, so with little endian words it is the first delimiter.
+ */
+final class SwarDelimiterScanner extends DelimiterScanner {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long LOW_BYTES = 0x0101010101010101L;
+    private static final long HIGH_BYTES = 0x8080808080808080L;
+    private static final long LOW_CHARS = 0x0001000100010001L;
+    private static final long HIGH_CHARS = 0x8000800080008000L;
+
+    private final long byte0, byte1, byte2, byte3;
+    private final long char0, char1, char2, char3;
+
+    SwarDelimiterScanner(char[] delimiters) {
+        super(delimiters);
+        byte0 = LOW_BYTES * delimiter(0);
+        byte1 = LOW_BYTES * delimiter(1);
+        byte2 = LOW_BYTES * delimiter(2);
+        byte3 = LOW_BYTES * delimiter(3);
+        char0 = LOW_CHARS * delimiter(0);
+        char1 = LOW_CHARS * delimiter(1);
+        char2 = LOW_CHARS * delimiter(2);
+        char3 = LOW_CHARS * delimiter(3);
+    }
+
+    @Override
+    int indexOf(byte[] buf, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            final long word = (long) LONG_VIEW.get(buf, i);
+            final long found = zeroBytes(word ^ byte0) | zeroBytes(word ^ byte1)
+                    | zeroBytes(word ^ byte2) | zeroBytes(word ^ byte3);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        return scalarIndexOf(buf, i, to);
+    }
+
+    @Override
+    int indexOf(char[] buf, int from, int to) {
+        int i = from;
+        for (; i + 4 <= to; i += 4) {
+            final long word = buf[i] | ((long) buf[i + 1] << 16) | ((long) buf[i + 2] << 32) | ((long) buf[i + 3] << 48);
+            final long found = zeroChars(word ^ char0) | zeroChars(word ^ char1)
+                    | zeroChars(word ^ char2) | zeroChars(word ^ char3);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 4);
+            }
+        }
+        return scalarIndexOf(buf, i, to);
+    }
+
+    private static long zeroBytes(long x) {
+        return (x - LOW_BYTES) & ~x & HIGH_BYTES;
+    }
+
+    private static long zeroChars(long x) {
+        return (x - LOW_CHARS) & ~x & HIGH_CHARS;
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
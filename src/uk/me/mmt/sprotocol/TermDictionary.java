@@ -0,0 +1,105 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dictionary giving every distinct SparqlResource a dense int ID, 0, 1, 2...
+ * in the order they are first encoded
+ * 
+ * Grouping, joining or de-duplicating results on the IDs avoids hashing and
+ * comparing the Strings of the terms. A dictionary may be used for a single 
+ * result, or shared by many so their IDs can be compared. It is thread safe.
+ * 
+ * BNodes are encoded by their label, which is only meaningful within one result.
+ */
+public final class TermDictionary {
+
+    private final Map<SparqlResource,Integer> ids = new HashMap<SparqlResource,Integer>();
+    // written under the lock, read without it, see decode
+    private volatile SparqlResource[] terms = new SparqlResource[64];
+    private volatile int size = 0;
+
+    /**
+     * @param term a term, not 'null'
+     * @return the ID of the term, which is added to the dictionary if need be
+     */
+    public synchronized int encode(SparqlResource term) {
+        if (null == term) {
+            throw new IllegalArgumentException("A 'null' term can not be encoded");
+        }
+
+        final Integer id = ids.get(term);
+        if (id != null) {
+            return id.intValue();
+        }
+
+        final int next = size;
+        if (next == terms.length) {
+            final SparqlResource[] grown = Arrays.copyOf(terms, next * 2);
+            grown[next] = term;
+            terms = grown;
+        } else {
+            terms[next] = term;
+        }
+        ids.put(term, Integer.valueOf(next));
+        // publishes the term to decode
+        size = next + 1;
+        return next;
+    }
+
+    /**
+     * @return the ID of the term, or -1 if it is not in the dictionary
+     */
+    public synchronized int getId(SparqlResource term) {
+        final Integer id = ids.get(term);
+        return (null == id) ? -1 : id.intValue();
+    }
+
+    /**
+     * Does not lock, so many threads can decode at once, while others encode.
+     *
+     * @param id an ID returned by encode
+     * @return the term with the ID
+     * @throws IndexOutOfBoundsException if no term has the ID
+     */
+    public SparqlResource decode(int id) {
+        // read size first, terms is then an array holding every term below it
+        final int n = size;
+        if (id < 0 || id >= n) {
+            throw new IndexOutOfBoundsException("ID: " + id + ", Size: " + n);
+        }
+        return terms[id];
+    }
+
+    /**
+     * @return the number of terms in the dictionary, which is also the next ID
+     */
+    public int size() {
+        return size;
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
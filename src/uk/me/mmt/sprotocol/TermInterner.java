@@ -0,0 +1,146 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded, thread safe, interner of the terms which repeat across SPARQL results
+ * 
+ * IRIs are canonicalised, so a result holds a single IRI instance per distinct IRI, and
+ * datatype and language Strings are canonicalised for Literals. IRIs are stored as a 
+ * namespace String shared with all the other IRIs of that namespace plus a local name.
+ * 
+ * Each table holds at most maxSize entries. When a table is full it is cleared, so the 
+ * interner adapts to the terms currently being seen rather than keeping the first ones 
+ * forever. Terms are equal whether or not they went through an interner.
+ * 
+ * One interner may be shared by many clients, see SparqlQueryProtocolClient.setTermInterner
+ */
+public final class TermInterner {
+
+    public static final int DEFAULT_MAX_SIZE = 65536;
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String,IRI> iris;
+    private final ConcurrentHashMap<String,String> namespaces;
+    private final ConcurrentHashMap<String,String> strings;
+
+    public TermInterner() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of entries held by each table of the interner
+     */
+    public TermInterner(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size of a TermInterner must be positive");
+        }
+        this.maxSize = maxSize;
+        this.iris = new ConcurrentHashMap<String,IRI>();
+        this.namespaces = new ConcurrentHashMap<String,String>();
+        this.strings = new ConcurrentHashMap<String,String>();
+        seed();
+    }
+
+    private void seed() {
+        namespaces.put(SprotocolConstants.XSD_NS, SprotocolConstants.XSD_NS);
+        strings.put(SprotocolConstants.XSD_BOOLEAN, SprotocolConstants.XSD_BOOLEAN);
+        strings.put(SprotocolConstants.XSD_INTEGER, SprotocolConstants.XSD_INTEGER);
+        strings.put(SprotocolConstants.XSD_DOUBLE, SprotocolConstants.XSD_DOUBLE);
+        strings.put(SprotocolConstants.XSD_DECIMAL, SprotocolConstants.XSD_DECIMAL);
+        strings.put(SprotocolConstants.XSD_STRING, SprotocolConstants.XSD_STRING);
+    }
+
+    /**
+     * @param iri the value of an IRI
+     * @return the canonical IRI instance for the value
+     */
+    public IRI iri(String iri) {
+        final IRI cached = iris.get(iri);
+        if (cached != null) {
+            return cached;
+        }
+
+        final int split = IRI.splitPoint(iri);
+        final IRI created;
+        if (split == 0 || split == iri.length()) {
+            created = new IRI(iri);
+        } else {
+            created = new IRI(intern(namespaces, iri.substring(0, split)), iri.substring(split));
+        }
+
+        makeRoom(iris);
+        final IRI previous = iris.putIfAbsent(iri, created);
+        return (previous == null) ? created : previous;
+    }
+
+    /**
+     * @return the canonical instance of a Literal datatype, or 'null' for 'null'
+     */
+    public String datatype(String datatype) {
+        if (null == datatype) {
+            return null;
+        }
+        return intern(strings, datatype);
+    }
+
+    /**
+     * @return the canonical instance of a Literal language, or 'null' for 'null'
+     */
+    public String language(String language) {
+        if (null == language) {
+            return null;
+        }
+        return intern(strings, language);
+    }
+
+    /**
+     * Drop every interned term
+     */
+    public void clear() {
+        iris.clear();
+        namespaces.clear();
+        strings.clear();
+        seed();
+    }
+
+    private String intern(ConcurrentHashMap<String,String> table, String value) {
+        final String cached = table.get(value);
+        if (cached != null) {
+            return cached;
+        }
+
+        makeRoom(table);
+        final String previous = table.putIfAbsent(value, value);
+        return (previous == null) ? value : previous;
+    }
+
+    private void makeRoom(ConcurrentHashMap<String,?> table) {
+        if (table.size() >= maxSize) {
+            table.clear();
+        }
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
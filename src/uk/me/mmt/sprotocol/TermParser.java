@@ -0,0 +1,249 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.Closeable;
+
+/**
+ * The parts shared by the parsers of SPARQL results and of RDF: creating their
+ * terms, through a TermInterner if there is one, and decoding literals eagerly,
+ * lazily or as large literals.
+ */
+abstract class TermParser implements Closeable {
+
+    private TermInterner interner;
+    private boolean lazyLiterals;
+    private int largeLiteralThreshold = Integer.MAX_VALUE;
+    private final StringBuilder unescaped = new StringBuilder();
+
+    // whether literals created by sliceLiteral refer to the buffer of the parser,
+    // which must then not be overwritten, the parser resets it when it moves to a new buffer
+    boolean bufferShared;
+
+    // checks the rows and the length of the terms parsed, 'null' for no limits
+    ResultLimiter limiter;
+
+    /**
+     * @param interner used to create the IRIs and Literals, may be 'null'
+     */
+    void setTermInterner(TermInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * @param lazy whether the values of literals are only decoded when first asked for,
+     * ignored by parsers which can not keep their input around
+     */
+    void setLazyLiterals(boolean lazy) {
+        this.lazyLiterals = lazy;
+    }
+
+    boolean isLazyLiterals() {
+        return this.lazyLiterals;
+    }
+
+    /**
+     * A large literal is still read whole into the buffer of the parser once, which
+     * grows to hold it, and shrinks back once it has been parsed. Only the copy into
+     * a String is saved.
+     *
+     * @param chars the length above which the values of literals are kept as chars, see createLargeLiteral
+     */
+    void setLargeLiteralThreshold(int chars) {
+        this.largeLiteralThreshold = chars;
+    }
+
+    /**
+     * @param limiter checks the ResultLimits of the request being parsed, may be 'null'
+     */
+    void setLimiter(ResultLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    boolean isLargeLiteral(int chars) {
+        return chars > this.largeLiteralThreshold;
+    }
+
+    IRI createIRI(String iri) {
+        if (null != limiter) {
+            limiter.checkTermLength(iri.length());
+        }
+        if (null == interner) {
+            return new IRI(iri);
+        }
+        return interner.iri(iri);
+    }
+
+    Literal createLiteral(String value, String datatype, String language) {
+        return createLiteral(value, datatype, language, null);
+    }
+
+    /**
+     * @param parsedValue the value of the literal, if the parser already decoded it, see Literal.parseValue
+     */
+    Literal createLiteral(String value, String datatype, String language, Object parsedValue) {
+        if (null != limiter) {
+            limiter.checkTermLength(value.length());
+        }
+        if (null == interner) {
+            return new Literal(value, datatype, language, parsedValue);
+        }
+        return new Literal(value, interner.datatype(datatype), interner.language(language), parsedValue);
+    }
+
+    /**
+     * Create a literal whose value is decoded from the buffer on the first getValue()
+     *
+     * @param escaped whether the value has backslash escapes, which must have been validated
+     */
+    Literal createLiteral(char[] buf, int start, int end, boolean escaped, String datatype, String language) {
+        if (null != limiter) {
+            limiter.checkTermLength(end - start);
+        }
+        if (null == interner) {
+            return new Literal(buf, start, end, escaped, datatype, language);
+        }
+        return new Literal(buf, start, end, escaped, interner.datatype(datatype), interner.language(language));
+    }
+
+    /**
+     * Create a literal whose value is kept as chars, and never as a String
+     *
+     * @param buf the unescaped value, which must not be modified afterwards
+     */
+    Literal createLargeLiteral(char[] buf, int start, int end, String datatype, String language) {
+        if (null != limiter) {
+            limiter.checkTermLength(end - start);
+        }
+        if (null == interner) {
+            return new Literal(buf, start, end, false, datatype, language, false);
+        }
+        return new Literal(buf, start, end, false, interner.datatype(datatype), interner.language(language), false);
+    }
+
+    /**
+     * The buffer to move the unread chars of buf to before reading more: buf itself,
+     * a new buffer if literals refer to buf, or a new one of the usual size if buf
+     * grew to hold a large term and its unread chars now fit in half the usual size
+     *
+     * @param unread the number of chars to keep
+     * @param bufferSize the usual size of the buffer of the parser
+     */
+    char[] compactTarget(char[] buf, int unread, int bufferSize) {
+        final boolean shrink = buf.length > bufferSize && unread < bufferSize / 2;
+        final char[] target = (this.bufferShared || shrink) ? new char[shrink ? bufferSize : buf.length] : buf;
+        this.bufferShared = false;
+        return target;
+    }
+
+    /**
+     * Create a literal from a slice of a buffer, as the settings of this parser say:
+     * as a large literal, a lazy literal or a plain one. Large and lazy literals may
+     * then refer to the buffer, in which case bufferShared is set.
+     *
+     * @param start Index of the value in the buffer
+     * @param end Index after the end of the value
+     * @param escaped Whether the value may contain backslash escapes, see StringEscapes
+     * @throws SprotocolException on unexpected escape sequence
+     */
+    Literal sliceLiteral(char[] buf, int start, int end, boolean escaped, String datatype, String language) throws SprotocolException {
+        if (isLargeLiteral(end - start)) {
+            if (escaped) {
+                final StringBuilder sb = this.unescaped;
+                sb.setLength(0);
+                try {
+                    StringEscapes.append(buf, start, end, sb);
+                } catch (final IllegalArgumentException e) {
+                    throw new SprotocolException(e.getMessage(), e);
+                }
+                final char[] chars = new char[sb.length()];
+                sb.getChars(0, chars.length, chars, 0);
+                // do not keep a builder as large as the literal around
+                sb.setLength(0);
+                sb.trimToSize();
+                return createLargeLiteral(chars, 0, chars.length, datatype, language);
+            }
+            this.bufferShared = true;
+            return createLargeLiteral(buf, start, end, datatype, language);
+        }
+
+        if (!isLazyLiterals()) {
+            return createLiteral(unescape(buf, start, end, escaped), datatype, language);
+        }
+
+        if (escaped) {
+            // the escapes are checked now, so that getValue() can not fail
+            try {
+                StringEscapes.validate(buf, start, end);
+            } catch (final IllegalArgumentException e) {
+                throw new SprotocolException(e.getMessage(), e);
+            }
+        }
+        this.bufferShared = true;
+        return createLiteral(buf, start, end, escaped, datatype, language);
+    }
+
+    /**
+     * Convert backslash escape sequences back into the appropriate characters.
+     *
+     * @param start Index of the string in the buffer
+     * @param end Index after the end of the string
+     * @param escaped Whether the string contains a backslash, if not it is copied as is
+     * @return The string with escape sequences converted
+     * @throws SprotocolException on unexpected escape sequence
+     */
+    String unescape(char[] buf, int start, int end, boolean escaped) throws SprotocolException {
+        if (!escaped) {
+            return new String(buf, start, end - start);
+        }
+
+        try {
+            return StringEscapes.unescape(buf, start, end, this.unescaped);
+        } catch (final IllegalArgumentException e) {
+            throw new SprotocolException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return previous if it holds the same chars as the slice of the buffer, otherwise a new String of them
+     */
+    static String sliceAsString(String previous, char[] buf, int start, int end) {
+        if (previous != null && sliceEquals(previous, buf, start, end)) {
+            return previous;
+        }
+        return new String(buf, start, end - start);
+    }
+
+    static boolean sliceEquals(String s, char[] buf, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buf[i] != s.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,95 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * An immutable RDF triple
+ */
+public final class Triple {
+
+    private final SparqlResource subject;
+    private final IRI predicate;
+    private final SparqlResource object;
+
+    public Triple(SparqlResource subject, IRI predicate, SparqlResource object) {
+        if (null == subject || null == predicate || null == object) {
+            throw new IllegalArgumentException("The terms of a triple can not be 'null'");
+        }
+        this.subject = subject;
+        this.predicate = predicate;
+        this.object = object;
+    }
+
+    /**
+     * @return an IRI or a BNode
+     */
+    public SparqlResource getSubject() {
+        return subject;
+    }
+
+    public IRI getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * @return an IRI, a BNode or a Literal
+     */
+    public SparqlResource getObject() {
+        return object;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + subject.hashCode();
+        result = prime * result + predicate.hashCode();
+        result = prime * result + object.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Triple))
+            return false;
+        Triple other = (Triple) obj;
+        return subject.equals(other.subject) && predicate.equals(other.predicate) && object.equals(other.object);
+    }
+
+    /**
+     * @return the triple as an N-Triples line, without the end of line
+     */
+    @Override
+    public String toString() {
+        return String.format("%s %s %s .", term(subject), predicate, term(object));
+    }
+
+    private static String term(SparqlResource resource) {
+        if (resource.isBnode()) {
+            return "_:" + resource.getValue();
+        }
+        return resource.toString();
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
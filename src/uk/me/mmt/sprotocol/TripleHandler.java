@@ -0,0 +1,44 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+/**
+ * A push style callback interface for the triples of an RDF graph,
+ * such as the result of a CONSTRUCT or DESCRIBE query
+ * 
+ * The RDF parsers call the handler directly as they decode the response,
+ * so the graph is never held in memory as a whole.
+ */
+public interface TripleHandler {
+
+    /**
+     * Called once per triple, in the order of the response
+     * 
+     * @param subject an IRI or a BNode
+     * @param predicate the IRI of the property
+     * @param object an IRI, a BNode or a Literal
+     * @throws SprotocolException to abort the parse
+     */
+    void handleTriple(SparqlResource subject, IRI predicate, SparqlResource object) throws SprotocolException;
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,100 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over the triples of an RDF graph, parsed from the response as they are asked for
+ * 
+ * The underlying connection is closed once the last triple has been read, close the
+ * iterator to release it earlier. IOExceptions are thrown wrapped in SprotocolExceptions.
+ */
+public final class TripleIterator implements Iterator<Triple>, Closeable {
+
+    private final RdfParser parser;
+    // triples parsed but not returned yet, as one statement may have many triples
+    private final ArrayDeque<Triple> pending = new ArrayDeque<Triple>();
+    private final TripleHandler collector = new TripleHandler() {
+        @Override
+        public void handleTriple(SparqlResource subject, IRI predicate, SparqlResource object) {
+            pending.add(new Triple(subject, predicate, object));
+        }
+    };
+    private boolean finished;
+
+    TripleIterator(RdfParser parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (pending.isEmpty() && !finished) {
+                if (!parser.parseNext(collector)) {
+                    close();
+                }
+            }
+        } catch (final IOException e) {
+            closeQuietly();
+            throw new SprotocolException("IOException caught by sprotocol", e);
+        } catch (final SprotocolException e) {
+            closeQuietly();
+            throw e;
+        }
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public Triple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pending.poll();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            parser.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (final IOException e) {
+            // the original exception is more useful
+        }
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
@@ -0,0 +1,724 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A streaming parser of Turtle (http://www.w3.org/TR/turtle/), one statement at a time.
+ *
+ * The triples of each statement are passed on as soon as they are parsed, so nothing
+ * but the prefixes and the base is kept from one statement to the next. Strings are
+ * scanned straight out of the char buffer with DelimiterScanners, and then created as
+ * lazy or large literals when the parser is set to, as the other parsers do.
+ *
+ * Blank nodes written as [] or collections are labelled as RdfParser.generateBNode does.
+ */
+final class TurtleParser extends RdfParser {
+    private static final int BUFFER_SIZE = 16384;
+
+    private static final DelimiterScanner IRI_END = DelimiterScanner.create('>', '\\', '\n');
+    private static final DelimiterScanner DOUBLE_QUOTE_END = DelimiterScanner.create('"', '\\', '\n', '\r');
+    private static final DelimiterScanner SINGLE_QUOTE_END = DelimiterScanner.create('\'', '\\', '\n', '\r');
+    private static final DelimiterScanner LONG_DOUBLE_QUOTE_END = DelimiterScanner.create('"', '\\');
+    private static final DelimiterScanner LONG_SINGLE_QUOTE_END = DelimiterScanner.create('\'', '\\');
+
+    private final Reader in;
+
+    private char[] buf;
+    // next char to parse
+    private int pos;
+    // end of the chars available in buf
+    private int limit;
+    // start of the string being scanned, kept in the buffer when it is refilled, or -1
+    private int mark = -1;
+    private long line = 1;
+
+    // the string last scanned, relative to mark
+    private int stringStart;
+    private int stringEnd;
+    private boolean stringEscaped;
+
+    private final Map<String, String> prefixes = new HashMap<String, String>();
+    private String base;
+    private final StringBuilder token = new StringBuilder();
+
+    private TripleHandler handler;
+    private IRI rdfType;
+    private IRI rdfFirst;
+    private IRI rdfRest;
+    private IRI rdfNil;
+    private IRI lastPredicate;
+    private String lastPredicateValue;
+    private String lastDatatype;
+    private String lastLanguage;
+
+    /**
+     * @param in Reader over the Turtle
+     */
+    TurtleParser(Reader in) {
+        this.in = in;
+        this.buf = new char[BUFFER_SIZE];
+    }
+
+    @Override
+    boolean readNext(TripleHandler handler) throws SprotocolException, IOException {
+        this.handler = handler;
+        if (this.rdfType == null) {
+            this.rdfType = createIRI(SprotocolConstants.RDF_NS + "type");
+            this.rdfFirst = createIRI(SprotocolConstants.RDF_NS + "first");
+            this.rdfRest = createIRI(SprotocolConstants.RDF_NS + "rest");
+            this.rdfNil = createIRI(SprotocolConstants.RDF_NS + "nil");
+        }
+
+        skipSpace();
+        final int c = peek();
+        if (c == -1) {
+            return false;
+        }
+
+        if (c == '@') {
+            parseDirective();
+        } else if (lookingAt("PREFIX", true)) {
+            this.pos += 6;
+            parsePrefix();
+        } else if (lookingAt("BASE", true)) {
+            this.pos += 4;
+            parseBase();
+        } else {
+            parseTriples();
+            skipSpace();
+            expect('.');
+        }
+        return true;
+    }
+
+    /**
+     * @prefix or @base, ended by a '.'
+     */
+    private void parseDirective() throws SprotocolException, IOException {
+        this.pos++;
+        if (lookingAt("prefix", false)) {
+            this.pos += 6;
+            parsePrefix();
+        } else if (lookingAt("base", false)) {
+            this.pos += 4;
+            parseBase();
+        } else {
+            throw error("unknown directive");
+        }
+        skipSpace();
+        expect('.');
+    }
+
+    private void parsePrefix() throws SprotocolException, IOException {
+        skipSpace();
+        this.token.setLength(0);
+        int c;
+        while ((c = peek()) != ':') {
+            if (c == -1 || !(isNameChar((char) c) || c == '.')) {
+                throw error("invalid prefix");
+            }
+            this.token.append((char) c);
+            this.pos++;
+        }
+        this.pos++;
+        final String prefix = this.token.toString();
+        skipSpace();
+        this.prefixes.put(prefix, readIRIRef());
+    }
+
+    private void parseBase() throws SprotocolException, IOException {
+        skipSpace();
+        this.base = readIRIRef();
+    }
+
+    private void parseTriples() throws SprotocolException, IOException {
+        if (peek() == '[') {
+            final BNode subject = parseBlankNodePropertyList();
+            skipSpace();
+            if (peek() != '.') {
+                parsePredicateObjectList(subject);
+            }
+        } else {
+            parsePredicateObjectList(parseSubject());
+        }
+    }
+
+    private SparqlResource parseSubject() throws SprotocolException, IOException {
+        final int c = peek();
+        if (c == '<') {
+            return createIRI(readIRIRef());
+        }
+        if (c == '_') {
+            return parseBNodeLabel();
+        }
+        if (c == '(') {
+            return parseCollection();
+        }
+        return createIRI(readPrefixedName());
+    }
+
+    private void parsePredicateObjectList(SparqlResource subject) throws SprotocolException, IOException {
+        while (true) {
+            skipSpace();
+            final IRI predicate = parseVerb();
+            parseObjectList(subject, predicate);
+            skipSpace();
+            if (peek() != ';') {
+                return;
+            }
+            while (peek() == ';') {
+                this.pos++;
+                skipSpace();
+            }
+            final int c = peek();
+            if (c == '.' || c == ']' || c == -1) {
+                return;
+            }
+        }
+    }
+
+    private void parseObjectList(SparqlResource subject, IRI predicate) throws SprotocolException, IOException {
+        while (true) {
+            skipSpace();
+            final SparqlResource object = parseObject();
+            this.handler.handleTriple(subject, predicate, object);
+            skipSpace();
+            if (peek() != ',') {
+                return;
+            }
+            this.pos++;
+        }
+    }
+
+    private IRI parseVerb() throws SprotocolException, IOException {
+        if (lookingAt("a", false)) {
+            this.pos++;
+            return this.rdfType;
+        }
+
+        final String value = (peek() == '<') ? readIRIRef() : readPrefixedName();
+        if (!value.equals(this.lastPredicateValue)) {
+            this.lastPredicate = createIRI(value);
+            this.lastPredicateValue = value;
+        }
+        return this.lastPredicate;
+    }
+
+    private SparqlResource parseObject() throws SprotocolException, IOException {
+        final int c = peek();
+        switch (c) {
+        case -1:
+            throw error("expected an object");
+        case '<':
+            return createIRI(readIRIRef());
+        case '_':
+            return parseBNodeLabel();
+        case '[':
+            return parseBlankNodePropertyList();
+        case '(':
+            return parseCollection();
+        case '"':
+        case '\'':
+            return parseLiteral();
+        case '+':
+        case '-':
+        case '.':
+            return parseNumber();
+        default:
+            if (c >= '0' && c <= '9') {
+                return parseNumber();
+            }
+            if (lookingAt("true", false)) {
+                this.pos += 4;
+                return createLiteral("true", SprotocolConstants.XSD_BOOLEAN, null, Boolean.TRUE);
+            }
+            if (lookingAt("false", false)) {
+                this.pos += 5;
+                return createLiteral("false", SprotocolConstants.XSD_BOOLEAN, null, Boolean.FALSE);
+            }
+            return createIRI(readPrefixedName());
+        }
+    }
+
+    /**
+     * [ predicateObjectList ], or [] for a blank node without properties
+     */
+    private BNode parseBlankNodePropertyList() throws SprotocolException, IOException {
+        expect('[');
+        final BNode node = generateBNode();
+        skipSpace();
+        if (peek() != ']') {
+            parsePredicateObjectList(node);
+            skipSpace();
+        }
+        expect(']');
+        return node;
+    }
+
+    /**
+     * ( object* ), as an rdf:first / rdf:rest list
+     */
+    private SparqlResource parseCollection() throws SprotocolException, IOException {
+        expect('(');
+        skipSpace();
+        if (peek() == ')') {
+            this.pos++;
+            return this.rdfNil;
+        }
+
+        final BNode head = generateBNode();
+        BNode current = head;
+        while (true) {
+            this.handler.handleTriple(current, this.rdfFirst, parseObject());
+            skipSpace();
+            if (peek() == ')') {
+                this.pos++;
+                this.handler.handleTriple(current, this.rdfRest, this.rdfNil);
+                return head;
+            }
+            final BNode next = generateBNode();
+            this.handler.handleTriple(current, this.rdfRest, next);
+            current = next;
+        }
+    }
+
+    private BNode parseBNodeLabel() throws SprotocolException, IOException {
+        expect('_');
+        expect(':');
+        this.token.setLength(0);
+        readName();
+        if (this.token.length() == 0) {
+            throw error("invalid blank node label");
+        }
+        return labelledBNode(this.token.toString());
+    }
+
+    /**
+     * Read name chars into token, '.' only when more name chars follow it
+     */
+    private void readName() throws IOException {
+        while (true) {
+            final int c = peek();
+            if (c == -1) {
+                return;
+            }
+            if (c == '.') {
+                if (!ensure(2) || !isNameChar(this.buf[this.pos + 1])) {
+                    return;
+                }
+            } else if (!isNameChar((char) c)) {
+                return;
+            }
+            this.token.append((char) c);
+            this.pos++;
+        }
+    }
+
+    private Literal parseLiteral() throws SprotocolException, IOException {
+        this.mark = this.pos;
+        try {
+            scanString();
+
+            String datatype = null;
+            String language = null;
+            final int c = peek();
+            if (c == '@') {
+                this.pos++;
+                this.token.setLength(0);
+                int l;
+                while ((l = peek()) != -1 && ((l >= 'a' && l <= 'z') || (l >= 'A' && l <= 'Z') || (l >= '0' && l <= '9') || l == '-')) {
+                    this.token.append((char) l);
+                    this.pos++;
+                }
+                if (this.token.length() == 0) {
+                    throw error("expected a language tag");
+                }
+                if (this.lastLanguage == null || !this.lastLanguage.contentEquals(this.token)) {
+                    this.lastLanguage = this.token.toString();
+                }
+                language = this.lastLanguage;
+            } else if (c == '^') {
+                this.pos++;
+                expect('^');
+                final String value = (peek() == '<') ? readIRIRef() : readPrefixedName();
+                if (!value.equals(this.lastDatatype)) {
+                    this.lastDatatype = value;
+                }
+                datatype = this.lastDatatype;
+            }
+
+            return sliceLiteral(this.buf, this.mark + this.stringStart, this.mark + this.stringEnd, this.stringEscaped, datatype, language);
+        } finally {
+            this.mark = -1;
+        }
+    }
+
+    /**
+     * Scan a string, short or long, quoted with " or ', from its opening quote at mark to after its
+     * closing quote, setting stringStart and stringEnd around its value
+     */
+    private void scanString() throws SprotocolException, IOException {
+        final char quote = this.buf[this.pos++];
+        final boolean isLong = ensure(2) && this.buf[this.pos] == quote && this.buf[this.pos + 1] == quote;
+        if (isLong) {
+            this.pos += 2;
+        }
+        final DelimiterScanner scanner;
+        if (quote == '"') {
+            scanner = isLong ? LONG_DOUBLE_QUOTE_END : DOUBLE_QUOTE_END;
+        } else {
+            scanner = isLong ? LONG_SINGLE_QUOTE_END : SINGLE_QUOTE_END;
+        }
+
+        this.stringStart = this.pos - this.mark;
+        this.stringEscaped = false;
+        int i = this.pos;
+        while (true) {
+            if (i >= this.limit) {
+                final int shift = fill();
+                if (shift == -1) {
+                    throw error("unterminated string");
+                }
+                i -= shift;
+                continue;
+            }
+
+            i = scanner.indexOf(this.buf, i, this.limit);
+            if (i == this.limit) {
+                continue;
+            }
+
+            final char c = this.buf[i];
+            if (c == '\\') {
+                this.stringEscaped = true;
+                i += 2;
+            } else if (c == quote) {
+                if (!isLong) {
+                    this.stringEnd = i - this.mark;
+                    this.pos = i + 1;
+                    return;
+                }
+                while (this.limit - i < 3) {
+                    final int shift = fill();
+                    if (shift == -1) {
+                        throw error("unterminated string");
+                    }
+                    i -= shift;
+                }
+                if (this.buf[i + 1] == quote && this.buf[i + 2] == quote) {
+                    this.stringEnd = i - this.mark;
+                    this.pos = i + 3;
+                    countLines(this.mark + this.stringStart, i);
+                    return;
+                }
+                i++;
+            } else {
+                throw error("end of line in a string");
+            }
+        }
+    }
+
+    private Literal parseNumber() throws SprotocolException, IOException {
+        this.token.setLength(0);
+        int c = peek();
+        if (c == '+' || c == '-') {
+            this.token.append((char) c);
+            this.pos++;
+        }
+        readDigits();
+
+        String datatype = SprotocolConstants.XSD_INTEGER;
+        if (peek() == '.' && ensure(2) && isNumberChar(this.buf[this.pos + 1])) {
+            // otherwise the '.' ends the statement
+            this.token.append('.');
+            this.pos++;
+            readDigits();
+            datatype = SprotocolConstants.XSD_DECIMAL;
+        }
+        c = peek();
+        if (c == 'e' || c == 'E') {
+            this.token.append((char) c);
+            this.pos++;
+            c = peek();
+            if (c == '+' || c == '-') {
+                this.token.append((char) c);
+                this.pos++;
+            }
+            readDigits();
+            datatype = SprotocolConstants.XSD_DOUBLE;
+        }
+
+        final String term = this.token.toString();
+        try {
+            return createLiteral(term, datatype, null, Literal.parseValue(term, datatype));
+        } catch (final IllegalArgumentException e) {
+            throw error("invalid number " + term);
+        }
+    }
+
+    private void readDigits() throws IOException {
+        int c;
+        while ((c = peek()) >= '0' && c <= '9') {
+            this.token.append((char) c);
+            this.pos++;
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == 'e' || c == 'E';
+    }
+
+    /**
+     * Read an IRI, e.g. &lt;http://example.org/&gt;, resolved against the base
+     */
+    private String readIRIRef() throws SprotocolException, IOException {
+        expect('<');
+        this.token.setLength(0);
+        while (true) {
+            if (this.pos == this.limit && fill() == -1) {
+                throw error("unterminated IRI");
+            }
+            final int i = IRI_END.indexOf(this.buf, this.pos, this.limit);
+            this.token.append(this.buf, this.pos, i - this.pos);
+            this.pos = i;
+            if (i == this.limit) {
+                continue;
+            }
+
+            final char c = this.buf[this.pos++];
+            if (c == '>') {
+                break;
+            }
+            if (c == '\n') {
+                throw error("unterminated IRI");
+            }
+            // only the u and U escapes are valid in IRIs
+            final int e = peek();
+            if (e == 'u' || e == 'U') {
+                this.pos++;
+                this.token.appendCodePoint(readHex(e == 'u' ? 4 : 8));
+            } else {
+                throw error("invalid escape in IRI");
+            }
+        }
+        return IriResolver.resolve(this.base, this.token.toString());
+    }
+
+    private int readHex(int digits) throws SprotocolException, IOException {
+        if (!ensure(digits)) {
+            throw error("truncated escape");
+        }
+        int codePoint = 0;
+        for (int i = 0; i < digits; i++) {
+            final int digit = Character.digit(this.buf[this.pos++], 16);
+            if (digit == -1) {
+                throw error("invalid escape");
+            }
+            codePoint = (codePoint << 4) | digit;
+        }
+        if (!Character.isValidCodePoint(codePoint)) {
+            throw error("invalid escape");
+        }
+        return codePoint;
+    }
+
+    /**
+     * Read a prefixed name, e.g. foaf:name, and return the IRI it stands for
+     */
+    private String readPrefixedName() throws SprotocolException, IOException {
+        this.token.setLength(0);
+        int c;
+        while ((c = peek()) != ':') {
+            if (c == -1 || !(isNameChar((char) c) || c == '.')) {
+                throw error("expected an IRI");
+            }
+            this.token.append((char) c);
+            this.pos++;
+        }
+        this.pos++;
+
+        final String namespace = this.prefixes.get(this.token.toString());
+        if (namespace == null) {
+            throw error("undefined prefix '" + this.token + "'");
+        }
+
+        this.token.setLength(0);
+        this.token.append(namespace);
+        while ((c = peek()) != -1) {
+            if (isNameChar((char) c) || c == ':') {
+                this.token.append((char) c);
+                this.pos++;
+            } else if (c == '%') {
+                if (!ensure(3)) {
+                    throw error("truncated escape");
+                }
+                this.token.append(this.buf, this.pos, 3);
+                this.pos += 3;
+            } else if (c == '\\') {
+                if (!ensure(2)) {
+                    throw error("truncated escape");
+                }
+                this.token.append(this.buf[this.pos + 1]);
+                this.pos += 2;
+            } else if (c == '.' && ensure(2) && (isNameChar(this.buf[this.pos + 1]) || this.buf[this.pos + 1] == ':')) {
+                // a local name can not end with a '.', that is the end of the statement
+                this.token.append('.');
+                this.pos++;
+            } else {
+                break;
+            }
+        }
+        return this.token.toString();
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-' || c >= 0x80;
+    }
+
+    /**
+     * @return true if the keyword is next, and is not the start of a longer name
+     */
+    private boolean lookingAt(String keyword, boolean ignoreCase) throws IOException {
+        final int length = keyword.length();
+        final boolean more = ensure(length + 1);
+        if (!more && !ensure(length)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = this.buf[this.pos + i];
+            final char k = keyword.charAt(i);
+            if (c != k && !(ignoreCase && Character.toUpperCase(c) == Character.toUpperCase(k))) {
+                return false;
+            }
+        }
+        if (more) {
+            final char next = this.buf[this.pos + length];
+            return !isNameChar(next) && next != ':';
+        }
+        return true;
+    }
+
+    private void expect(char c) throws SprotocolException, IOException {
+        if (peek() != c) {
+            throw error("expected '" + c + "'");
+        }
+        this.pos++;
+    }
+
+    /**
+     * Skip white space and comments
+     */
+    private void skipSpace() throws IOException {
+        int c;
+        while ((c = peek()) != -1) {
+            if (c == '\n') {
+                this.line++;
+            } else if (c == '#') {
+                while ((c = peek()) != -1 && c != '\n') {
+                    this.pos++;
+                }
+                continue;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return;
+            }
+            this.pos++;
+        }
+    }
+
+    private void countLines(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (this.buf[i] == '\n') {
+                this.line++;
+            }
+        }
+    }
+
+    private SprotocolException error(String message) {
+        return new SprotocolException(String.format("Invalid Turtle at line %d, %s", this.line, message), null);
+    }
+
+    /**
+     * @return the next char, or -1 at the end of the input
+     */
+    private int peek() throws IOException {
+        if (this.pos == this.limit && fill() == -1) {
+            return -1;
+        }
+        return this.buf[this.pos];
+    }
+
+    /**
+     * @return true if at least n chars are available from pos, false at the end of the input
+     */
+    private boolean ensure(int n) throws IOException {
+        while (this.limit - this.pos < n) {
+            if (fill() == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read more chars, first moving the ones from mark (or pos) to the start of the buffer
+     * (or growing it if it is full of them), into a new buffer if literals refer to this one.
+     *
+     * @return the number of positions the chars moved back by, or -1 at the end of the input
+     * @throws IOException if the reader fails
+     */
+    private int fill() throws IOException {
+        final int keep = (this.mark != -1) ? this.mark : this.pos;
+        if (keep > 0) {
+            // literals may still refer to the chars before keep
+            final char[] target = compactTarget(this.buf, this.limit - keep, BUFFER_SIZE);
+            System.arraycopy(this.buf, keep, target, 0, this.limit - keep);
+            this.buf = target;
+            this.limit -= keep;
+            this.pos -= keep;
+            if (this.mark != -1) {
+                this.mark -= keep;
+            }
+        } else if (this.limit == this.buf.length) {
+            this.buf = Arrays.copyOf(this.buf, this.buf.length * 2);
+            this.bufferShared = false;
+        }
+
+        final int read = this.in.read(this.buf, this.limit, this.buf.length - this.limit);
+        if (read == -1) {
+            return -1;
+        }
+        this.limit += read;
+        return keep;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */
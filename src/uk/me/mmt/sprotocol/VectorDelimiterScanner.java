@@ -0,0 +1,85 @@
+/*
+    sprotocol - Java SPARQL Protocol Client Library
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+ */
+/**
+ * Copyright 2011 Mischa Tuffield
+ *
+ */
+package uk.me.mmt.sprotocol;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A DelimiterScanner using the JDK Vector API, comparing a whole vector of bytes 
+ * or chars against each delimiter at once
+ * 
+ * This needs jdk.incubator.vector to compile and run (--add-modules jdk.incubator.vector),
+ * it is only ever loaded through DelimiterScanner.vector().
+ */
+final class VectorDelimiterScanner extends DelimiterScanner {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+
+    private final byte byte0, byte1, byte2, byte3;
+    private final short char0, char1, char2, char3;
+
+    VectorDelimiterScanner(char[] delimiters) {
+        super(delimiters);
+        byte0 = (byte) delimiter(0);
+        byte1 = (byte) delimiter(1);
+        byte2 = (byte) delimiter(2);
+        byte3 = (byte) delimiter(3);
+        char0 = (short) delimiter(0);
+        char1 = (short) delimiter(1);
+        char2 = (short) delimiter(2);
+        char3 = (short) delimiter(3);
+    }
+
+    @Override
+    int indexOf(byte[] buf, int from, int to) {
+        int i = from;
+        final int bound = from + BYTES.loopBound(to - from);
+        for (; i < bound; i += BYTES.length()) {
+            final ByteVector v = ByteVector.fromArray(BYTES, buf, i);
+            final VectorMask<Byte> found = v.eq(byte0).or(v.eq(byte1)).or(v.eq(byte2)).or(v.eq(byte3));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return scalarIndexOf(buf, i, to);
+    }
+
+    @Override
+    int indexOf(char[] buf, int from, int to) {
+        int i = from;
+        final int bound = from + CHARS.loopBound(to - from);
+        for (; i < bound; i += CHARS.length()) {
+            final ShortVector v = ShortVector.fromCharArray(CHARS, buf, i);
+            final VectorMask<Short> found = v.eq(char0).or(v.eq(char1)).or(v.eq(char2)).or(v.eq(char3));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return scalarIndexOf(buf, i, to);
+    }
+
+}
+
+/* vi:set ts=8 sts=4 sw=4 et: */